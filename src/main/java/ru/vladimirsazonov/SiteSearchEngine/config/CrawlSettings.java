@@ -0,0 +1,22 @@
+package ru.vladimirsazonov.SiteSearchEngine.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "crawl-settings")
+@Data
+public class CrawlSettings {
+    private double requestsPerSecond = 10;
+    private int burst = 5;
+    private int maxConcurrentRequestsPerHost = 4;
+    private Duration timeout = Duration.ofMillis(1500);
+    private int parserThreads = Runtime.getRuntime().availableProcessors();
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxPages = Integer.MAX_VALUE;
+    private Duration checkpointInterval = Duration.ofSeconds(30);
+    private boolean skipNearDuplicates;
+}
@@ -0,0 +1,16 @@
+package ru.vladimirsazonov.SiteSearchEngine.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+@Data
+public class SearchSettings {
+    private int maxLemmaFrequencyPercent = 100;
+    private int frequencyCutoffMinPages = 100;
+    private int exactCountThreshold = 1000;
+    private long resultCacheMaxBytes = 64L * 1024 * 1024;
+    private int resultCacheMaxEntryBytes = 256 * 1024;
+}
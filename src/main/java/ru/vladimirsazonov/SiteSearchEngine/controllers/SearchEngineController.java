@@ -50,9 +50,12 @@ public class SearchEngineController {
     public ResponseEntity<SearchEngineResponse> getSearchResult(@RequestParam(required = false) String query,
                                                                 @RequestParam(required = false) String site,
                                                                 @RequestParam(defaultValue = "0") int offset,
-                                                                @RequestParam(defaultValue = "20") int limit) {
+                                                                @RequestParam(defaultValue = "20") int limit,
+                                                                @RequestParam(required = false) String ranking,
+                                                                @RequestParam(required = false)
+                                                                String minShouldMatch) {
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(searchService.startSearch(query, site, offset, limit));
+                .body(searchService.startSearch(query, site, offset, limit, ranking, minShouldMatch));
     }
 }
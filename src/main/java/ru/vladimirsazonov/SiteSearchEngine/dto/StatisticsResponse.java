@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 @Getter
 @RequiredArgsConstructor
@@ -17,6 +18,19 @@ public class StatisticsResponse extends SearchEngineResponse {
     }
 
     public record SiteStatistics(String url, String name, String status, long statusTime, String error, int pages,
-                                 int lemmas) {
+                                 int lemmas, CrawlProgress progress) {
+
+        public SiteStatistics withProgress(CrawlProgress progress) {
+            return new SiteStatistics(url, name, status, statusTime, error, pages, lemmas, progress);
+        }
+    }
+
+    /**
+     * Rates are averaged over the time since the crawl started.
+     */
+    public record CrawlProgress(long pagesFetched, double pagesPerSecond, int fetchQueueDepth, int writeQueueDepth,
+                                long bytesDownloaded, double meanFetchMillis, double meanLemmatizationMillis,
+                                long rowsWritten, double rowsPerSecond, Map<String, Long> errors,
+                                int estimatedRemaining) {
     }
 }
@@ -0,0 +1,44 @@
+package ru.vladimirsazonov.SiteSearchEngine.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "crawl_checkpoint")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CrawlCheckpoint {
+
+    @Id
+    @Column(name = "site_id")
+    private int siteId;
+
+    @Column(nullable = false)
+    private int generation;
+
+    @Column(name = "results_count", nullable = false)
+    private int resultsCount;
+
+    @Column(name = "failures_count", nullable = false)
+    private int failuresCount;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "seen_paths", columnDefinition = "MEDIUMBLOB", nullable = false)
+    private byte[] seenPaths;
+
+    @Column(name = "visited_paths", columnDefinition = "MEDIUMBLOB", nullable = false)
+    private byte[] visitedPaths;
+
+    @Column(name = "pending_urls", columnDefinition = "MEDIUMBLOB", nullable = false)
+    private byte[] pendingUrls;
+
+    @Column(name = "saved_time", nullable = false)
+    private LocalDateTime savedTime;
+}
@@ -0,0 +1,4 @@
+package ru.vladimirsazonov.SiteSearchEngine.model;
+
+public record IndexEntry(int lemmaId, int pageId, float grade, byte[] positions) {
+}
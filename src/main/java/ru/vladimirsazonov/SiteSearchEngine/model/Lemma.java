@@ -11,6 +11,7 @@ import java.util.Objects;
 @Entity
 @Data
 @NoArgsConstructor(force = true)
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_lemma_site_id_lemma", columnNames = {"site_id", "lemma"}))
 public class Lemma {
 
     @Id
@@ -18,7 +19,7 @@ public class Lemma {
     @SequenceGenerator(name = "SeqGenLemma", sequenceName = "seq_lemma")
     private int id;
 
-    @Column(nullable = false)
+    @Column(nullable = false, columnDefinition = "VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin")
     private final String lemma;
 
     @Column(nullable = false)
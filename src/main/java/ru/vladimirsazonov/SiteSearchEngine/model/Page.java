@@ -28,6 +28,32 @@ public class Page {
     @Column(nullable = false, columnDefinition = "MEDIUMTEXT")
     private final String content;
 
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String text;
+
+    @Column(name = "content_hash", nullable = false)
+    private long contentHash;
+
+    private String etag;
+
+    @Column(name = "last_modified")
+    private String lastModified;
+
+    @Column(name = "token_count", nullable = false)
+    private int tokenCount;
+
+    @Column(nullable = false)
+    private long fingerprint;
+
+    @Column(nullable = false)
+    private int generation;
+
+    @Column(name = "retired_generation", nullable = false)
+    private int retiredGeneration;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", nullable = false)
     private final Site site;
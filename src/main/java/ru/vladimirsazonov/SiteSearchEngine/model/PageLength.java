@@ -0,0 +1,4 @@
+package ru.vladimirsazonov.SiteSearchEngine.model;
+
+public record PageLength(int pageId, int tokenCount) {
+}
@@ -0,0 +1,4 @@
+package ru.vladimirsazonov.SiteSearchEngine.model;
+
+public record PageText(int id, int siteId, String path, String title, String text) {
+}
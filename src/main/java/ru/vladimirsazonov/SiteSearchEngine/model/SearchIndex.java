@@ -28,4 +28,7 @@ public class SearchIndex {
 
     @Column(nullable = false)
     private final float grade;
+
+    @Column(columnDefinition = "BLOB")
+    private byte[] positions;
 }
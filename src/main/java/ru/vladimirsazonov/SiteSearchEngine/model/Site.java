@@ -5,7 +5,6 @@ import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
-import java.util.Collection;
 
 @Entity
 @Data
@@ -32,11 +31,14 @@ public class Site {
     @Column(nullable = false)
     private String name;
 
-    @OneToMany(mappedBy = "site", fetch = FetchType.LAZY)
-    private Collection<Lemma> lemmas;
+    @Column(name = "active_generation", nullable = false)
+    private int activeGeneration;
 
-    @OneToMany(mappedBy = "site", fetch = FetchType.LAZY)
-    private Collection<Page> pages;
+    @Column(name = "page_count", nullable = false, insertable = false, updatable = false)
+    private int pageCount;
+
+    @Column(name = "lemma_count", nullable = false, insertable = false, updatable = false)
+    private int lemmaCount;
 
     public Site(Status status, LocalDateTime statusTime, String url, String name) {
         this(name, url);
@@ -48,4 +50,8 @@ public class Site {
         this.name = name;
         this.url = url;
     }
+
+    public boolean isSearchable() {
+        return activeGeneration > 0;
+    }
 }
@@ -0,0 +1,5 @@
+package ru.vladimirsazonov.SiteSearchEngine.model;
+
+public record StoredPage(int id, String path, long contentHash, String etag, String lastModified,
+                         long fingerprint) {
+}
@@ -0,0 +1,15 @@
+package ru.vladimirsazonov.SiteSearchEngine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.vladimirsazonov.SiteSearchEngine.model.CrawlCheckpoint;
+
+@Repository
+public interface CrawlCheckpointRepository extends JpaRepository<CrawlCheckpoint, Integer> {
+
+    @Query("DELETE FROM CrawlCheckpoint WHERE siteId = ?1")
+    @Modifying
+    void deleteBySiteId(int siteId);
+}
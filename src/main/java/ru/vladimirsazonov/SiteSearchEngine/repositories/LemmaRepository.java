@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.LemmaId;
 
 import java.util.Collection;
 import java.util.List;
@@ -13,25 +14,31 @@ import java.util.Optional;
 @Repository
 public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
 
-    @Query("SELECT lemma FROM SearchIndex WHERE page_id = ?1")
-    Optional<List<Lemma>> findByPageId(int pageId);
-
     @Query("FROM Lemma WHERE site_id = ?1")
     Optional<List<Lemma>> findBySiteId(int id);
 
-    @Query("FROM Lemma WHERE site_id = ?1 and lemma in ?2")
-    Optional<List<Lemma>> findBySiteIdAndLemmas(int siteId, Collection<String> lemmas);
+    @Query("SELECT new ru.vladimirsazonov.SiteSearchEngine.model.LemmaId(l.id, l.lemma) FROM Lemma l " +
+            "WHERE l.site.id = ?1 and l.lemma in ?2")
+    List<LemmaId> findIdsBySiteIdAndLemmas(int siteId, Collection<String> lemmas);
 
-    @Query("SELECT count(*) FROM Lemma WHERE site_id = ?1")
+    @Query("SELECT count(*) FROM Lemma WHERE site_id = ?1 and frequency > 0")
     int getCountBySiteId(int siteId);
 
     @Modifying
-    @Query("DELETE Lemma WHERE site_id = ?1")
-    void deleteBySiteId(int siteId);
+    @Query(value = "UPDATE lemma l JOIN (SELECT s.lemma_id, SUM(IF(p.generation = ?2, 1, -1)) delta " +
+            "FROM search_index s JOIN page p ON p.id = s.page_id " +
+            "WHERE p.site_id = ?1 and (p.generation = ?2 or p.retired_generation = ?2) " +
+            "and not (p.generation = ?2 and p.retired_generation = ?2) GROUP BY s.lemma_id) d " +
+            "ON d.lemma_id = l.id SET l.frequency = l.frequency + d.delta", nativeQuery = true)
+    void applyGenerationFrequencyDeltas(int siteId, int generation);
+
+    @Modifying
+    @Query("DELETE Lemma WHERE site_id = ?1 and frequency < 1")
+    void deleteUnusedBySiteId(int siteId);
 
     @Query("SELECT sum(frequency) FROM Lemma where lemma = ?1")
     Optional<Integer> findSumFrequencyByLemma(String lemma);
 
-    @Query("SELECT sum(frequency) FROM Lemma where lemma = ?1 and site.url = ?2")
-    Optional<Integer> findSumFrequencyByLemmaAndSite(String lemma, String site);
+    @Query("SELECT frequency FROM Lemma WHERE site_id = ?1 and lemma = ?2")
+    Optional<Integer> findFrequencyBySiteIdAndLemma(int siteId, String lemma);
 }
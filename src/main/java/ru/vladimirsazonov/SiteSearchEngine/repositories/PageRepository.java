@@ -5,29 +5,69 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.vladimirsazonov.SiteSearchEngine.model.Page;
+import ru.vladimirsazonov.SiteSearchEngine.model.PageLength;
+import ru.vladimirsazonov.SiteSearchEngine.model.PageText;
+import ru.vladimirsazonov.SiteSearchEngine.model.StoredPage;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PageRepository extends JpaRepository<Page, Integer> {
 
-    @Query("FROM Page WHERE site_id = ?1 and path = ?2")
+    @Query("FROM Page WHERE site_id = ?1 and path = ?2 and retiredGeneration = 0")
     Optional<Page> findBySiteIdAndPath(int siteId, String path);
 
-    @Query("FROM Page WHERE site_id = ?1")
-    Optional<List<Page>> findBySiteId(int siteId);
+    @Query("SELECT new ru.vladimirsazonov.SiteSearchEngine.model.PageText(p.id, p.site.id, p.path, p.title, p.text) " +
+            "FROM Page p WHERE p.id in ?1")
+    List<PageText> findPageTextsByIds(Collection<Integer> ids);
 
-    @Query("SELECT s.page FROM SearchIndex s WHERE s.lemma.lemma = ?1")
-    Optional<List<Page>> findByLemma(String lemma);
+    @Query("SELECT new ru.vladimirsazonov.SiteSearchEngine.model.StoredPage(p.id, p.path, p.contentHash, p.etag, " +
+            "p.lastModified, p.fingerprint) FROM Page p WHERE p.site.id = ?1 and p.retiredGeneration = 0")
+    List<StoredPage> findStoredPagesBySiteId(int siteId);
 
-    @Query("SELECT count(*) FROM Page WHERE site_id = ?1")
+    @Query("SELECT new ru.vladimirsazonov.SiteSearchEngine.model.StoredPage(p.id, p.path, p.contentHash, p.etag, " +
+            "p.lastModified, p.fingerprint) FROM Page p WHERE p.site.id = ?1 and p.path = ?2 " +
+            "and p.retiredGeneration = 0")
+    List<StoredPage> findStoredPagesBySiteIdAndPath(int siteId, String path);
+
+    @Query("SELECT new ru.vladimirsazonov.SiteSearchEngine.model.PageLength(p.id, p.tokenCount) FROM Page p " +
+            "WHERE p.site.id = ?1 and p.generation <= ?2 and (p.retiredGeneration = 0 or p.retiredGeneration > ?2)")
+    List<PageLength> findPageLengthsBySiteIdAndGeneration(int siteId, int generation);
+
+    @Query("SELECT content FROM Page WHERE id = ?1")
+    Optional<String> findContentById(int id);
+
+    @Modifying
+    @Query("UPDATE Page SET etag = ?2, lastModified = ?3 WHERE id = ?1")
+    void updateValidators(int id, String etag, String lastModified);
+
+    @Query("SELECT count(p) FROM Page p WHERE p.site.id = ?1 and p.generation <= p.site.activeGeneration " +
+            "and (p.retiredGeneration = 0 or p.retiredGeneration > p.site.activeGeneration)")
     int getCountBySiteId(int siteId);
 
+    @Query("SELECT count(p) FROM Page p WHERE p.generation <= p.site.activeGeneration " +
+            "and (p.retiredGeneration = 0 or p.retiredGeneration > p.site.activeGeneration)")
+    long getLiveCount();
+
     @Modifying
-    @Query("DELETE Page WHERE site_id = ?1")
-    void deleteBySiteId(int siteId);
+    @Query("UPDATE Page SET retiredGeneration = ?2 WHERE id in ?1")
+    void retire(Collection<Integer> ids, int generation);
 
-    @Query("SELECT s.page FROM SearchIndex s WHERE s.lemma.lemma = ?1 and s.lemma.site.url = ?2")
-    Optional<List<Page>> findByLemmaAndSiteUrl(String lemma, String site);
+    @Modifying
+    @Query("UPDATE Page SET retiredGeneration = ?3 WHERE site_id = ?1 and path in ?2 and retiredGeneration = 0")
+    void retireByPaths(int siteId, Collection<String> paths, int generation);
+
+    @Modifying
+    @Query("UPDATE Page SET retiredGeneration = 0 WHERE site_id = ?1 and retiredGeneration >= ?2")
+    void restoreRetiredSince(int siteId, int generation);
+
+    @Modifying
+    @Query("DELETE Page WHERE site_id = ?1 and generation >= ?2")
+    void deleteBySiteIdSinceGeneration(int siteId, int generation);
+
+    @Modifying
+    @Query("DELETE Page WHERE site_id = ?1 and retiredGeneration between 1 and ?2")
+    void deleteRetiredBySiteId(int siteId, int generation);
 }
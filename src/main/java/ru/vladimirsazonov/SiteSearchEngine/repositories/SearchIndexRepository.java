@@ -3,23 +3,32 @@ package ru.vladimirsazonov.SiteSearchEngine.repositories;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import ru.vladimirsazonov.SiteSearchEngine.model.IndexEntry;
 import ru.vladimirsazonov.SiteSearchEngine.model.SearchIndex;
 
+import javax.persistence.QueryHint;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface SearchIndexRepository extends JpaRepository<SearchIndex, Integer> {
 
-    @Query("SELECT SUM(s.grade) FROM SearchIndex s WHERE s.page.id = ?1 and s.lemma.lemma in ?2")
-    Optional<Float> getGradeSumByPageIdAndLemmas(int pageId, List<String> lemmas);
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new ru.vladimirsazonov.SiteSearchEngine.model.IndexEntry(s.lemma.id, s.page.id, s.grade, " +
+            "s.positions) FROM SearchIndex s WHERE s.page.site.id = ?1 and s.page.generation <= ?2 " +
+            "and (s.page.retiredGeneration = 0 or s.page.retiredGeneration > ?2) ORDER BY s.lemma.id, s.page.id")
+    Stream<IndexEntry> streamIndexEntriesBySiteId(int siteId, int generation);
 
     @Modifying
-    @Query("DELETE SearchIndex WHERE page_id in (SELECT id FROM Page WHERE site_id = ?1)")
-    void deleteBySiteId(int id);
+    @Query("DELETE SearchIndex WHERE page_id in (SELECT id FROM Page WHERE site_id = ?1 and generation >= ?2)")
+    void deleteBySiteIdSinceGeneration(int siteId, int generation);
 
     @Modifying
-    @Query("DELETE SearchIndex WHERE page_id = ?1")
-    void deleteByPageId(int pageId);
+    @Query("DELETE SearchIndex WHERE page_id in (SELECT id FROM Page WHERE site_id = ?1 " +
+            "and retiredGeneration between 1 and ?2)")
+    void deleteOfRetiredPagesBySiteId(int siteId, int generation);
 }
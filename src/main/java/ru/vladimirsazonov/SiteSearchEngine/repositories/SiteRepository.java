@@ -24,6 +24,18 @@ public interface SiteRepository extends JpaRepository<Site, Integer> {
     @Modifying
     void setStatusBySiteId(Status status, int id);
 
+    @Query("UPDATE Site SET activeGeneration = ?2, status = 'INDEXED', statusTime = NOW() WHERE id = ?1")
+    @Modifying
+    void activateGeneration(int id, int generation);
+
+    @Query(value = "UPDATE site s SET page_count = (SELECT COUNT(*) FROM page p WHERE p.site_id = s.id " +
+            "and p.generation <= s.active_generation " +
+            "and (p.retired_generation = 0 or p.retired_generation > s.active_generation)), " +
+            "lemma_count = (SELECT COUNT(*) FROM lemma l WHERE l.site_id = s.id and l.frequency > 0) " +
+            "WHERE s.id = ?1", nativeQuery = true)
+    @Modifying
+    void updateCountersBySiteId(int id);
+
     @Query("UPDATE Site SET lastError = ?1 WHERE id = ?2")
     @Modifying
     void setErrorMessageBySiteId(String errorMessage, int id);
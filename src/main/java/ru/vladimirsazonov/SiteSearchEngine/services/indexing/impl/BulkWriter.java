@@ -0,0 +1,101 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.vladimirsazonov.SiteSearchEngine.model.IndexEntry;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.Page;
+
+import java.util.Collection;
+import java.util.List;
+
+@Component
+public class BulkWriter {
+    private static final int ALLOCATION_SIZE = 50;
+    private static final int PAGES_BATCH_SIZE = 50;
+    private static final int ROWS_BATCH_SIZE = 1000;
+    private static final String INSERT_PAGE = "INSERT INTO page (id, path, code, content, title, text, " +
+            "content_hash, etag, last_modified, token_count, generation, retired_generation, site_id, fingerprint) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPSERT_LEMMA = "INSERT INTO lemma (id, lemma, frequency, site_id) " +
+            "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE id = id";
+    private static final String INSERT_INDEX = "INSERT INTO search_index (id, page_id, lemma_id, grade, " +
+            "positions) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate allocationTransaction;
+
+    public BulkWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        allocationTransaction = new TransactionTemplate(transactionManager);
+        allocationTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void insertPages(Collection<Page> pages) {
+        if (pages.isEmpty()) return;
+        int id = allocateIds("seq_page", pages.size());
+        for (Page page : pages) page.setId(id++);
+        jdbcTemplate.batchUpdate(INSERT_PAGE, pages, PAGES_BATCH_SIZE, (statement, page) -> {
+            statement.setInt(1, page.getId());
+            statement.setString(2, page.getPath());
+            statement.setInt(3, page.getCode());
+            statement.setString(4, page.getContent());
+            statement.setString(5, page.getTitle());
+            statement.setString(6, page.getText());
+            statement.setLong(7, page.getContentHash());
+            statement.setString(8, page.getEtag());
+            statement.setString(9, page.getLastModified());
+            statement.setInt(10, page.getTokenCount());
+            statement.setInt(11, page.getGeneration());
+            statement.setInt(12, page.getRetiredGeneration());
+            statement.setInt(13, page.getSite().getId());
+            statement.setLong(14, page.getFingerprint());
+        });
+    }
+
+    /**
+     * Inserts the lemmas missing in the site, the ones already stored are left as they are
+     * and keep their ids: the ids set on such lemmas here are not theirs.
+     */
+    public void upsertLemmas(Collection<Lemma> lemmas) {
+        if (lemmas.isEmpty()) return;
+        int id = allocateIds("seq_lemma", lemmas.size());
+        for (Lemma lemma : lemmas) lemma.setId(id++);
+        jdbcTemplate.batchUpdate(UPSERT_LEMMA, lemmas, ROWS_BATCH_SIZE, (statement, lemma) -> {
+            statement.setInt(1, lemma.getId());
+            statement.setString(2, lemma.getLemma());
+            statement.setInt(3, lemma.getFrequency());
+            statement.setInt(4, lemma.getSite().getId());
+        });
+    }
+
+    public void insertIndexEntries(List<IndexEntry> entries) {
+        if (entries.isEmpty()) return;
+        int[] nextId = {allocateIds("seq_index", entries.size())};
+        jdbcTemplate.batchUpdate(INSERT_INDEX, entries, ROWS_BATCH_SIZE, (statement, entry) -> {
+            statement.setInt(1, nextId[0]++);
+            statement.setInt(2, entry.pageId());
+            statement.setInt(3, entry.lemmaId());
+            statement.setFloat(4, entry.grade());
+            statement.setBytes(5, entry.positions());
+        });
+    }
+
+    /**
+     * Hibernate's pooled optimizer may still hand out ids up to the stored {@code next_val}, so the block
+     * starts past it and {@code next_val} is moved one allocation size beyond the block.
+     */
+    private int allocateIds(String sequenceTable, int count) {
+        Integer firstId = allocationTransaction.execute(status -> {
+            Integer nextValue = jdbcTemplate.queryForObject("SELECT next_val FROM " + sequenceTable + " FOR UPDATE",
+                    Integer.class);
+            if (nextValue == null) throw new IllegalStateException("Sequence table " + sequenceTable + " is empty");
+            jdbcTemplate.update("UPDATE " + sequenceTable + " SET next_val = ?", nextValue + count + ALLOCATION_SIZE);
+            return nextValue + 1;
+        });
+        return firstId == null ? 0 : firstId;
+    }
+}
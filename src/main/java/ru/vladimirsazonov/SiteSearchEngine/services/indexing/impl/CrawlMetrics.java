@@ -0,0 +1,36 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.vladimirsazonov.SiteSearchEngine.dto.StatisticsResponse;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@RequiredArgsConstructor
+public class CrawlMetrics {
+    private final MeterRegistry meterRegistry;
+    private final Map<String, SiteCrawlMetrics> running = new ConcurrentHashMap<>();
+
+    public SiteCrawlMetrics start(String siteUrl) {
+        SiteCrawlMetrics metrics = new SiteCrawlMetrics(meterRegistry, siteUrl);
+        SiteCrawlMetrics previous = running.put(siteUrl, metrics);
+        if (previous != null) previous.close();
+        return metrics;
+    }
+
+    public void finish(SiteCrawlMetrics metrics) {
+        running.remove(metrics.getSiteUrl(), metrics);
+        metrics.close();
+    }
+
+    /**
+     * Returns the progress of the crawl of the site or {@code null} if the site is not being crawled.
+     */
+    public StatisticsResponse.CrawlProgress getProgress(String siteUrl) {
+        SiteCrawlMetrics metrics = running.get(siteUrl);
+        return metrics == null ? null : metrics.getProgress();
+    }
+}
@@ -4,14 +4,19 @@ import lombok.Data;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import ru.vladimirsazonov.SiteSearchEngine.model.*;
+import ru.vladimirsazonov.SiteSearchEngine.repositories.CrawlCheckpointRepository;
 import ru.vladimirsazonov.SiteSearchEngine.repositories.LemmaRepository;
 import ru.vladimirsazonov.SiteSearchEngine.repositories.PageRepository;
 import ru.vladimirsazonov.SiteSearchEngine.repositories.SearchIndexRepository;
 import ru.vladimirsazonov.SiteSearchEngine.repositories.SiteRepository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Component
 @Data
@@ -20,7 +25,8 @@ public class DAO {
     private final LemmaRepository lemmaRepository;
     private final SiteRepository siteRepository;
     private final SearchIndexRepository searchIndexRepository;
-    private String baseUrlForSinglePage;
+    private final CrawlCheckpointRepository crawlCheckpointRepository;
+    private final BulkWriter bulkWriter;
 
     public Site findSiteByName(String name) {
         return siteRepository.findByName(name).orElse(null);
@@ -35,17 +41,13 @@ public class DAO {
     }
 
     public long getPagesTotalCount() {
-        return pageRepository.count();
+        return pageRepository.getLiveCount();
     }
 
     public int getPagesCountBySiteId(int id) {
         return pageRepository.getCountBySiteId(id);
     }
 
-    public long getLemmasTotalCount() {
-        return lemmaRepository.count();
-    }
-
     public int getLemmasCountBySiteId(int id) {
         return lemmaRepository.getCountBySiteId(id);
     }
@@ -74,145 +76,160 @@ public class DAO {
         return pageRepository.findBySiteIdAndPath(site.getId(), path).orElse(null);
     }
 
-    public List<Lemma> findLemmasBySiteIdAndLemmas(int id, Set<String> lemmas) {
-        return lemmaRepository.findBySiteIdAndLemmas(id, lemmas).orElse(List.of());
-    }
-
     public List<Lemma> findLemmasBySiteId(int id) {
         return lemmaRepository.findBySiteId(id).orElse(List.of());
     }
 
-    public void saveLemma(Lemma lemma) {
-        lemmaRepository.save(lemma);
-    }
-
     public Site saveSite(Site site) {
         return siteRepository.save(site);
     }
 
-    public List<Lemma> findLemmasByPageId(int id) {
-        return lemmaRepository.findByPageId(id).orElse(List.of());
+    @Transactional
+    public void savePages(List<Page> pages) {
+        bulkWriter.insertPages(pages);
     }
 
+    /**
+     * Sets the ids of the stored rows on the lemmas of one site, inserting only the missing lemmas.
+     */
     @Transactional
-    public void deleteIndexByPageId(int id) {
-        searchIndexRepository.deleteByPageId(id);
+    public void saveLemmas(Collection<Lemma> lemmas) {
+        if (lemmas.isEmpty()) return;
+        int siteId = lemmas.iterator().next().getSite().getId();
+        Map<String, Lemma> unresolved = new HashMap<>();
+        lemmas.forEach(lemma -> unresolved.put(lemma.getLemma(), lemma));
+        resolveLemmaIds(siteId, unresolved);
+        if (unresolved.isEmpty()) return;
+        bulkWriter.upsertLemmas(List.copyOf(unresolved.values()));
+        resolveLemmaIds(siteId, unresolved);
     }
 
-    @Transactional
-    public void deleteLemma(Lemma lemma) {
-        lemmaRepository.delete(lemma);
+    private void resolveLemmaIds(int siteId, Map<String, Lemma> unresolved) {
+        lemmaRepository.findIdsBySiteIdAndLemmas(siteId, List.copyOf(unresolved.keySet()))
+                .forEach(lemmaId -> unresolved.remove(lemmaId.lemma()).setId(lemmaId.id()));
     }
 
     @Transactional
-    public void deleteIndexesBySiteId(int id) {
-        searchIndexRepository.deleteBySiteId(id);
+    public void saveIndexEntries(List<IndexEntry> entries) {
+        bulkWriter.insertIndexEntries(entries);
     }
 
     @Transactional
-    public void deleteLemmasBySiteId(int id) {
-        lemmaRepository.deleteBySiteId(id);
+    public List<Site> saveSites(List<Site> sites) {
+        return siteRepository.saveAll(sites);
     }
 
-    @Transactional
-    public void deletePagesBySiteId(int id) {
-        pageRepository.deleteBySiteId(id);
+    public List<PageText> findPageTextsByIds(Collection<Integer> ids) {
+        return pageRepository.findPageTextsByIds(ids);
     }
 
-    @Transactional
-    public void savePages(List<Page> pages) {
-        pageRepository.saveAll(pages);
+    @Transactional(readOnly = true)
+    public void forEachIndexEntryBySiteId(int siteId, int generation, Consumer<IndexEntry> consumer) {
+        try (Stream<IndexEntry> entries = searchIndexRepository.streamIndexEntriesBySiteId(siteId, generation)) {
+            entries.forEach(consumer);
+        }
+    }
+
+    public List<PageLength> findPageLengths(int siteId, int generation) {
+        return pageRepository.findPageLengthsBySiteIdAndGeneration(siteId, generation);
     }
 
     @Transactional
-    public void saveLemmas(Set<Lemma> lemmas) {
-        lemmaRepository.saveAll(lemmas);
+    public Site updateSiteData(String url, String name) {
+        Site site = findSiteByName(name);
+        if (site == null)
+            site = saveSite(new Site(Status.INDEXING, LocalDateTime.now(), url, name));
+        setSiteStatusIndexing(site);
+        return site;
+    }
+
+    public List<StoredPage> findStoredPagesBySiteId(int siteId) {
+        return pageRepository.findStoredPagesBySiteId(siteId);
+    }
+
+    public List<StoredPage> findStoredPagesBySiteIdAndPath(int siteId, String path) {
+        return pageRepository.findStoredPagesBySiteIdAndPath(siteId, path);
+    }
+
+    public String findPageContentById(int id) {
+        return pageRepository.findContentById(id).orElse("");
     }
 
     @Transactional
-    public void saveIndexes(List<SearchIndex> indexes) {
-        searchIndexRepository.saveAll(indexes);
+    public void updatePagesValidators(List<Page> pages) {
+        pages.forEach(page -> pageRepository.updateValidators(page.getId(), page.getEtag(), page.getLastModified()));
     }
 
     @Transactional
-    public List<Site> saveSites(List<Site> sites) {
-        return siteRepository.saveAll(sites);
+    public void retirePages(Collection<Integer> pageIds, int generation) {
+        if (pageIds.isEmpty()) return;
+        pageRepository.retire(pageIds, generation);
     }
 
-    public List<Page> findPagesBySiteId(int siteId) {
-        return pageRepository.findBySiteId(siteId).orElse(List.of());
+    @Transactional
+    public void retirePagesByPaths(int siteId, Collection<String> paths, int generation) {
+        if (paths.isEmpty()) return;
+        pageRepository.retireByPaths(siteId, paths, generation);
     }
 
+    /**
+     * Drops what an unfinished build of {@code generation} or later has left, reviving the pages it has retired.
+     */
     @Transactional
-    public Site updateSiteData(String url, String name, boolean isSinglePage) {
-        Site site = findSiteByName(name);
-        if (site == null)
-            site = saveSite(new Site(Status.INDEXING, LocalDateTime.now(), url, name));
-        else if (isSinglePage) deletePageAndIndexes(site, url);
-        else {
-            int siteId = site.getId();
-            deleteIndexesBySiteId(siteId);
-            deletePagesBySiteId(siteId);
-            deleteLemmasBySiteId(siteId);
-        }
-        setSiteStatusIndexing(site);
-        return site;
+    public void discardGeneration(int siteId, int generation) {
+        searchIndexRepository.deleteBySiteIdSinceGeneration(siteId, generation);
+        pageRepository.deleteBySiteIdSinceGeneration(siteId, generation);
+        pageRepository.restoreRetiredSince(siteId, generation);
     }
 
+    /**
+     * Pages the generation has both added and retired were never visible and do not change lemma frequencies.
+     */
     @Transactional
-    private void setSiteStatusIndexing(Site site) {
-        site.setStatus(Status.INDEXING);
-        site.setStatusTime(LocalDateTime.now());
-        site.setLastError(null);
-        saveSite(site);
+    public void activateGeneration(int siteId, int generation) {
+        lemmaRepository.applyGenerationFrequencyDeltas(siteId, generation);
+        siteRepository.activateGeneration(siteId, generation);
+        siteRepository.updateCountersBySiteId(siteId);
     }
 
     @Transactional
-    public void deletePageAndIndexes(Site site, String url) {
-        String path = url.substring(site.getUrl().length());
-        if (path.isBlank()) path = "/";
-        Page page = findPageBySiteIdAndPath(site, path);
-        if (page == null) return;
-        int pageId = page.getId();
-        List<Lemma> lemmas = findLemmasByPageId(pageId);
-        deleteIndexByPageId(pageId);
-        deletePageById(pageId);
-        lemmas.forEach(lemma -> {
-            int frequency = lemma.getFrequency();
-            if (--frequency == 0) deleteLemma(lemma);
-            else {
-                lemma.setFrequency(frequency);
-                saveLemma(lemma);
-            }
-        });
+    public void collectRetiredPages(int siteId, int generation) {
+        searchIndexRepository.deleteOfRetiredPagesBySiteId(siteId, generation);
+        pageRepository.deleteRetiredBySiteId(siteId, generation);
+        lemmaRepository.deleteUnusedBySiteId(siteId);
+    }
+
+    public CrawlCheckpoint findCheckpointBySiteId(int siteId) {
+        return crawlCheckpointRepository.findById(siteId).orElse(null);
     }
 
     @Transactional
-    private void deletePageById(int id) {
-        pageRepository.deleteById(id);
+    public void saveCheckpoint(CrawlCheckpoint checkpoint) {
+        crawlCheckpointRepository.save(checkpoint);
     }
 
-    public Integer getTotalFrequencyForLemma(String lemma) {
-        return lemmaRepository.findSumFrequencyByLemma(lemma).orElse(0);
+    @Transactional
+    public void deleteCheckpointBySiteId(int siteId) {
+        crawlCheckpointRepository.deleteBySiteId(siteId);
     }
 
-    public Integer getFrequencyForLemmaBySite(String lemma, String site) {
-        return lemmaRepository.findSumFrequencyByLemmaAndSite(lemma, site).orElse(0);
+    @Transactional
+    private void setSiteStatusIndexing(Site site) {
+        site.setStatus(Status.INDEXING);
+        site.setStatusTime(LocalDateTime.now());
+        site.setLastError(null);
+        saveSite(site);
     }
 
-    public List<Page> findPagesByLemma(String lemma) {
-        return pageRepository.findByLemma(lemma).orElse(List.of());
+    public Integer getTotalFrequencyForLemma(String lemma) {
+        return lemmaRepository.findSumFrequencyByLemma(lemma).orElse(0);
     }
 
-    public Float getGradeSumByPageIdAndLemmas(int pageId, List<String> lemmas) {
-        return searchIndexRepository.getGradeSumByPageIdAndLemmas(pageId, lemmas).orElse(0f);
+    public Integer getFrequencyForLemmaBySiteId(String lemma, int siteId) {
+        return lemmaRepository.findFrequencyBySiteIdAndLemma(siteId, lemma).orElse(0);
     }
 
     public List<Site> findAllSites() {
         return siteRepository.findAll();
     }
-
-    public List<Page> findPagesByLemmaAndSiteUrl(String lemma, String site) {
-        return pageRepository.findByLemmaAndSiteUrl(lemma, site).orElse(List.of());
-    }
 }
@@ -0,0 +1,12 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+/**
+ * @param charset the charset of the Content-Type header or {@code null} to detect it from the body
+ */
+public record FetchResult(String url, int statusCode, byte[] body, String charset, String etag, String lastModified,
+                          Exception exception) {
+
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+}
@@ -0,0 +1,22 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+public final class Fnv1aHash {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private Fnv1aHash() {
+    }
+
+    public static long of(CharSequence text) {
+        return append(OFFSET_BASIS, text);
+    }
+
+    public static long append(long hash, CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * PRIME;
+            hash = (hash ^ (c >>> 8)) * PRIME;
+        }
+        return hash;
+    }
+}
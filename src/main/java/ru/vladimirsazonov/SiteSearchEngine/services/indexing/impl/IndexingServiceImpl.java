@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.vladimirsazonov.SiteSearchEngine.config.CrawlSettings;
 import ru.vladimirsazonov.SiteSearchEngine.config.SitesList;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchEngineResponse;
 import ru.vladimirsazonov.SiteSearchEngine.exceptions.ServerStateException;
@@ -12,7 +13,11 @@ import ru.vladimirsazonov.SiteSearchEngine.model.*;
 import ru.vladimirsazonov.SiteSearchEngine.repositories.SelectorRepository;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.IndexingService;
 import ru.vladimirsazonov.SiteSearchEngine.services.morphology.MorphologyService;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.LemmaStatistics;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.SearchResultCache;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.InvertedIndex;
 
+import java.net.http.HttpClient;
 import java.time.Duration;
 import java.time.LocalTime;
 import java.util.*;
@@ -22,18 +27,24 @@ import java.util.concurrent.*;
 @Slf4j
 @RequiredArgsConstructor
 public class IndexingServiceImpl implements IndexingService {
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+    private static final String NOTHING_FETCHED_ERROR = "Не получено ни одной страницы сайта";
     private final int PARALLELISM_LEVEL = Runtime.getRuntime().availableProcessors();
     private final Map<Integer, ScheduledFuture<?>> scheduledFutureMap = new ConcurrentHashMap<>();
     private final SitesList sitesList;
+    private final CrawlSettings crawlSettings;
     private final SelectorRepository selectorRepository;
     private final MorphologyService morphologyService;
     private final DAO dao;
+    private final InvertedIndex invertedIndex;
+    private final LemmaStatistics lemmaStatistics;
+    private final SearchResultCache searchResultCache;
+    private final CrawlMetrics crawlMetrics;
     private ScheduledExecutorService scheduledThreadPoolExecutor;
     private ForkJoinPool forkJoinPool;
     private ExecutorService threadPoolExecutor;
-    private boolean indexingRunningFlag;
-    private String urlForSinglePage;
-    private boolean isSinglePageMode;
+    private HttpClient httpClient;
+    private volatile boolean indexingRunningFlag;
 
     @Value("${user-agent-name}")
     private String userAgentName;
@@ -48,31 +59,37 @@ public class IndexingServiceImpl implements IndexingService {
 
     @Override
     public SearchEngineResponse startIndexing() {
+        return start(null);
+    }
+
+    private synchronized SearchEngineResponse start(String singlePageUrl) {
         List<Site> sites;
         if ((sites = sitesList.getSites()).isEmpty())
             throw new RunApplicationException("В конфигурационом файле не указаны сайты");
         if (indexingRunningFlag) throw new ServerStateException("Индексация уже запущена");
-        if (isSinglePageMode) {
+        if (singlePageUrl != null) {
             Optional<Site> siteOptional = sites
                     .stream()
-                    .filter(site -> urlForSinglePage.startsWith(site.getUrl()))
+                    .filter(site -> singlePageUrl.startsWith(site.getUrl()))
                     .findAny();
             if (siteOptional.isEmpty())
                 throw new RunApplicationException("Данная страница находится за пределами сайтов, " +
                         "указанных в конфигурационном файле");
             Site site = siteOptional.get();
-            String path = urlForSinglePage.substring(site.getUrl().length());
-            if (path.isEmpty()) path = "/";
-            if (dao.findPageBySiteIdAndPath(site, path) == null)
+            if (dao.findPageBySiteIdAndPath(site, getSinglePagePath(site, singlePageUrl)) == null)
                 throw new RunApplicationException("Указанная страница не найдена");
             sites = List.of(site);
         }
         indexingRunningFlag = true;
         scheduledThreadPoolExecutor = Executors.newScheduledThreadPool(PARALLELISM_LEVEL);
-        threadPoolExecutor = Executors.newFixedThreadPool(PARALLELISM_LEVEL);
-        forkJoinPool = new ForkJoinPool();
+        threadPoolExecutor = Executors.newCachedThreadPool();
+        forkJoinPool = new ForkJoinPool(crawlSettings.getParserThreads());
+        httpClient = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(crawlSettings.getTimeout())
+                .build();
         List<Site> sitesToIndexing = sites;
-        threadPoolExecutor.execute(() -> indexing(getTaskList(sitesToIndexing)));
+        threadPoolExecutor.execute(() -> indexing(getTaskList(sitesToIndexing, singlePageUrl)));
         return new SearchEngineResponse();
     }
 
@@ -82,6 +99,12 @@ public class IndexingServiceImpl implements IndexingService {
         scheduledThreadPoolExecutor.shutdownNow();
         threadPoolExecutor.shutdownNow();
         forkJoinPool.shutdownNow();
+        try {
+            if (!threadPoolExecutor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                log.warn("Indexing threads have not finished in %d s after stop".formatted(STOP_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         dao.setAllSitesStatusFailed();
         return new SearchEngineResponse();
     }
@@ -89,89 +112,128 @@ public class IndexingServiceImpl implements IndexingService {
     @Override
     public SearchEngineResponse indexPage(String pageUrl) {
         if (pageUrl.isBlank()) throw new RunApplicationException("В запросе передана пустая страница");
-        isSinglePageMode = true;
-        urlForSinglePage = pageUrl;
-        return startIndexing();
+        return start(pageUrl);
     }
 
-    private void indexing(List<RecursiveLinkHandleTask> taskList) {
+    private void indexing(List<SiteTask> taskList) {
         log.info("Start indexing...");
         CountDownLatch countDownLatch = new CountDownLatch(taskList.size());
         LocalTime start = LocalTime.now();
-        ForkJoinTask.invokeAll(taskList)
-                .forEach(task ->
-                        threadPoolExecutor.execute(() -> {
-                            Site site = dao.findSiteById(task.getSiteId());
-                            List<LinkHandleTaskResult> taskResults = task.join();
-                            if (checkFailedSiteAndSetErrorsDetails(site, taskResults)) {
-                                dao.setSiteStatus(Status.FAILED, site.getId());
-                                countDownLatch.countDown();
-                                return;
-                            }
-                            dao.savePages(getSitePages(taskResults, site));
-                            if (isSinglePageMode) {
-                                indexingPage(taskResults.get(0), site);
-                                isSinglePageMode = false;
-                            } else {
-                                dao.saveLemmas(getSiteLemmas(taskResults, site));
-                                dao.saveIndexes(getSiteIndexes(taskResults, site));
-                            }
-                            dao.setSiteStatus(Status.INDEXED, site.getId());
-                            cancelScheduledTask(site);
-                            countDownLatch.countDown();
-                        }));
+        taskList.forEach(siteTask -> threadPoolExecutor.execute(() -> {
+            try {
+                indexingSite(siteTask);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                countDownLatch.countDown();
+            }
+        }));
         try {
             countDownLatch.await();
             log.info("Indexed at time: " + Duration.between(start, LocalTime.now()).toMillis() + " ms");
             scheduledThreadPoolExecutor.shutdownNow();
-            indexingRunningFlag = false;
         } catch (InterruptedException e) {
-            log.warn("Main thread '%s' is interrupted while indexing with cause: %s -> %s"
-                    .formatted(Thread.currentThread().getName(), e.getCause().getClass().getName(),
-                            e.getCause().getMessage()));
+            log.warn("Main thread '%s' is interrupted while indexing".formatted(Thread.currentThread().getName()));
+            awaitSites(countDownLatch);
+        } finally {
+            indexingRunningFlag = false;
         }
     }
 
-    private boolean checkFailedSiteAndSetErrorsDetails(Site site, List<LinkHandleTaskResult> taskResults) {
-        int countFailes = 0;
-        Exception lastEx;
-        String errorMesage = "";
-        for (LinkHandleTaskResult taskResult : taskResults) {
-            if ((lastEx = taskResult.getException()) != null)
-                errorMesage = "Total errors(s): %d. Last error: obtain path '%s' failed, exception type -> '%s', exception message -> %s; "
-                        .formatted(++countFailes, taskResult.getPath().equals("/") ? site.getUrl() : taskResult.getPath(),
-                                lastEx.getClass().getName(), lastEx.getMessage());
+    private void awaitSites(CountDownLatch countDownLatch) {
+        try {
+            countDownLatch.await(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        boolean result = countFailes == taskResults.size();
-        dao.setSiteErrorMessage(site.getId(), result ? errorMesage : "null");
-        return result;
     }
 
-    private void indexingPage(LinkHandleTaskResult taskResult, Site site) {
-        Page page = dao.findPageBySiteIdAndPath(site, taskResult.getPath());
-        Map<Lemma, Float> pageLemmasAndRanksMap = getPageLemmasAndRanksMap(taskResult, site);
-        dao.saveLemmas(pageLemmasAndRanksMap.keySet());
-        dao.saveIndexes(getPageIndexes(pageLemmasAndRanksMap, page));
+    private void indexingSite(SiteTask siteTask) throws InterruptedException {
+        Site site = siteTask.site();
+        SiteCrawler crawler = siteTask.crawler();
+        SiteIndexWriter writer = siteTask.writer();
+        try {
+            if (siteTask.resumed()) crawler.resume();
+            else crawler.submit(siteTask.isSinglePage() ? siteTask.singlePageUrl() : site.getUrl(), 0);
+            writer.writeUntil(crawler::isDone);
+            String errorMessage = writer.isEmpty() ? NOTHING_FETCHED_ERROR
+                    : writer.isAllFailed() ? writer.getLastErrorMessage() : null;
+            dao.setSiteErrorMessage(site.getId(), errorMessage == null ? "null" : errorMessage);
+            if (errorMessage != null) {
+                dao.setSiteStatus(Status.FAILED, site.getId());
+                dao.deleteCheckpointBySiteId(site.getId());
+                return;
+            }
+            if (!siteTask.isSinglePage()) writer.retireDisappearedPages();
+            int generation = writer.getGeneration();
+            dao.activateGeneration(site.getId(), generation);
+            dao.deleteCheckpointBySiteId(site.getId());
+            lemmaStatistics.invalidateSite(site.getId());
+            invertedIndex.loadSite(site.getId(), generation);
+            searchResultCache.invalidateSite(site.getId());
+            dao.collectRetiredPages(site.getId(), generation);
+            cancelScheduledTask(site);
+        } catch (RuntimeException e) {
+            log.error("Indexing of site %s failed".formatted(site.getUrl()), e);
+            crawler.cancel();
+            dao.setSiteErrorMessage(site.getId(), "Indexing failed: %s -> %s".formatted(e.getClass().getName(),
+                    e.getMessage()));
+            dao.setSiteStatus(Status.FAILED, site.getId());
+            dao.deleteCheckpointBySiteId(site.getId());
+        } finally {
+            crawlMetrics.finish(crawler.getMetrics());
+        }
     }
 
-    private List<RecursiveLinkHandleTask> getTaskList(List<Site> sites) {
+    private List<SiteTask> getTaskList(List<Site> sites, String singlePageUrl) {
         return sites
                 .stream()
-                .map(siteData -> getSingleTask(siteData).orElse(null))
+                .map(siteData -> getSingleTask(siteData, singlePageUrl).orElse(null))
                 .filter(Objects::nonNull)
                 .toList();
     }
 
-    private Optional<RecursiveLinkHandleTask> getSingleTask(Site site) {
+    private Optional<SiteTask> getSingleTask(Site site, String singlePageUrl) {
         if (forkJoinPool.isShutdown()) return Optional.empty();
+        boolean singlePage = singlePageUrl != null;
         String url = site.getUrl();
-        site = dao.updateSiteData(url, site.getName(), isSinglePageMode);
+        site = dao.updateSiteData(url, site.getName());
         int siteId = site.getId();
         addScheduledTask(siteId);
-        RecursiveLinkHandleTask task = new RecursiveLinkHandleTask(siteId, isSinglePageMode ? urlForSinglePage : url,
-                url, morphologyService, selectorRepository, userAgentName, referer);
-        if (isSinglePageMode) task.setSinglePageMode(true);
-        return Optional.of(task);
+        int generation = site.getActiveGeneration() + 1;
+        CrawlCheckpoint checkpoint = singlePage ? null : dao.findCheckpointBySiteId(siteId);
+        if (checkpoint != null && checkpoint.getGeneration() != generation) checkpoint = null;
+        if (checkpoint == null) {
+            dao.discardGeneration(siteId, generation);
+            dao.deleteCheckpointBySiteId(siteId);
+        }
+        Map<String, StoredPage> storedPages = new HashMap<>();
+        (singlePage ? dao.findStoredPagesBySiteIdAndPath(siteId, getSinglePagePath(site, singlePageUrl))
+                : dao.findStoredPagesBySiteId(siteId))
+                .forEach(storedPage -> storedPages.put(storedPage.path(), storedPage));
+        SiteCrawlMetrics metrics = crawlMetrics.start(url);
+        SiteFrontier frontier = checkpoint == null
+                ? new SiteFrontier(url, crawlSettings.getMaxDepth(), crawlSettings.getMaxPages())
+                : SiteFrontier.restore(url, crawlSettings.getMaxDepth(), crawlSettings.getMaxPages(),
+                new SiteFrontier.Snapshot(checkpoint.getVisitedPaths(), checkpoint.getPendingUrls()));
+        SiteIndexWriter writer = new SiteIndexWriter(site, generation, dao, storedPages, frontier, metrics);
+        if (checkpoint != null) {
+            writer.restore(checkpoint);
+            log.info("Resuming crawl of %s saved at %s: %d pages handled, %d pending".formatted(url,
+                    checkpoint.getSavedTime(), checkpoint.getResultsCount(), frontier.getPendingUrls().size()));
+        }
+        if (!singlePage) writer.setCheckpointInterval(crawlSettings.getCheckpointInterval());
+        writer.setSkipNearDuplicates(crawlSettings.isSkipNearDuplicates());
+        PageFetcher pageFetcher = new PageFetcher(httpClient, crawlSettings, userAgentName, referer, metrics);
+        SiteCrawler crawler = new SiteCrawler(siteId, url, frontier, pageFetcher, forkJoinPool, morphologyService,
+                selectorRepository, dao, storedPages, writer.getQueue(), singlePage, metrics);
+        metrics.watch(crawler, writer);
+        return Optional.of(new SiteTask(site, crawler, writer, checkpoint != null, singlePageUrl));
+    }
+
+    private String getSinglePagePath(Site site, String singlePageUrl) {
+        String path = singlePageUrl.substring(site.getUrl().length());
+        return path.isEmpty() ? "/" : path;
     }
 
     private void addScheduledTask(int siteId) {
@@ -184,71 +246,11 @@ public class IndexingServiceImpl implements IndexingService {
         scheduledFutureMap.get(site.getId()).cancel(true);
     }
 
-    private Map<Lemma, Float> getPageLemmasAndRanksMap(LinkHandleTaskResult taskResult, Site site) {
-        Map<String, Float> lemmasAndRanksMap = taskResult.getLemmasAndRanksMap();
-        List<Lemma> lemmas = dao.findLemmasBySiteIdAndLemmas(site.getId(), lemmasAndRanksMap.keySet());
-        Map<Lemma, Float> pageLemmasAndRanksMap = new HashMap<>();
-        lemmasAndRanksMap.forEach((lemma, rank) -> {
-            Lemma pageLemma = lemmas.stream()
-                    .filter(l -> l.getLemma().equals(lemma))
-                    .findFirst().orElse(null);
-            if (pageLemma != null) {
-                int frequency = pageLemma.getFrequency();
-                pageLemma.setFrequency(++frequency);
-            } else pageLemma = new Lemma(lemma, 1, site);
-            pageLemmasAndRanksMap.put(pageLemma, rank);
-        });
-        return pageLemmasAndRanksMap;
-    }
+    private record SiteTask(Site site, SiteCrawler crawler, SiteIndexWriter writer, boolean resumed,
+                            String singlePageUrl) {
 
-    private List<SearchIndex> getPageIndexes(Map<Lemma, Float> pageLemmasAndRanksMap, Page page) {
-        return pageLemmasAndRanksMap.entrySet()
-                .stream()
-                .map(entry -> new SearchIndex(page, entry.getKey(), entry.getValue()))
-                .toList();
-    }
-
-    private List<Page> getSitePages(List<LinkHandleTaskResult> taskResultList, Site site) {
-        return taskResultList.stream()
-                .filter(taskResult -> taskResult.getStatusCode() == 200)
-                .map(taskResult -> new Page(taskResult.getPath(),
-                        taskResult.getStatusCode(),
-                        taskResult.getContent(), site))
-                .toList();
-    }
-
-    private Set<Lemma> getSiteLemmas(List<LinkHandleTaskResult> taskResultList, Site site) {
-        Map<String, Integer> lemmasAndFrequencies = new HashMap<>();
-        taskResultList.forEach(taskResult ->
-                taskResult.getLemmasAndRanksMap()
-                        .keySet()
-                        .forEach(lemma ->
-                                lemmasAndFrequencies.merge(lemma, 1, (oldV, newV) -> ++oldV)));
-        Set<Lemma> lemmas = new HashSet<>();
-        lemmasAndFrequencies.forEach((lemma, frequency) ->
-                lemmas.add(new Lemma(lemma, frequency, site)));
-        return lemmas;
-    }
-
-    private List<SearchIndex> getSiteIndexes(List<LinkHandleTaskResult> taskResultList, Site site) {
-        int siteId = site.getId();
-        List<Lemma> siteLemmas = dao.findLemmasBySiteId(siteId);
-        List<Page> sitePages = dao.findPagesBySiteId(siteId);
-        List<SearchIndex> indexes = new ArrayList<>();
-        taskResultList.forEach(taskResult -> {
-            if (taskResult.getContent().isEmpty()) return;
-            Page page = sitePages.stream()
-                    .filter(p -> p.getPath().equals(taskResult.getPath()))
-                    .findFirst()
-                    .get();
-            taskResult.getLemmasAndRanksMap().forEach((lemma, rank) -> {
-                Lemma pageLemma = siteLemmas.stream()
-                        .filter(l -> l.getLemma().equals(lemma))
-                        .findFirst()
-                        .get();
-                indexes.add(new SearchIndex(page, pageLemma, rank));
-            });
-        });
-        return indexes;
+        boolean isSinglePage() {
+            return singlePageUrl != null;
+        }
     }
 }
@@ -11,6 +11,15 @@ public class LinkHandleTaskResult {
     private final int statusCode;
     private final int siteId;
     private final String content;
+    private String title;
+    private String text;
+    private long contentHash;
+    private long fingerprint;
+    private int tokenCount;
+    private String etag;
+    private String lastModified;
+    private boolean unchanged;
     private Exception exception;
     private Map<String, Float> lemmasAndRanksMap;
+    private Map<String, byte[]> lemmasPositionsMap = Map.of();
 }
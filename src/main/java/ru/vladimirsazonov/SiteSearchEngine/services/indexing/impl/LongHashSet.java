@@ -0,0 +1,92 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+public class LongHashSet {
+    private static final long EMPTY = 0;
+
+    private long[] values;
+    private int size;
+    private int mask;
+    private boolean containsEmpty;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) return false;
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int slot = slot(value);
+        long current;
+        while ((current = values[slot]) != EMPTY) {
+            if (current == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        values[slot] = value;
+        if (++size * 2 > values.length) resize();
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) return containsEmpty;
+        int slot = slot(value);
+        long current;
+        while ((current = values[slot]) != EMPTY) {
+            if (current == value) return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (containsEmpty) action.accept(EMPTY);
+        for (long value : values)
+            if (value != EMPTY) action.accept(value);
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(size * Long.BYTES);
+        forEach(buffer::putLong);
+        return buffer.array();
+    }
+
+    public static LongHashSet fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        LongHashSet set = new LongHashSet(bytes.length / Long.BYTES);
+        while (buffer.hasRemaining()) set.add(buffer.getLong());
+        return set;
+    }
+
+    private int slot(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private void resize() {
+        long[] oldValues = values;
+        values = new long[oldValues.length * 2];
+        mask = values.length - 1;
+        for (long value : oldValues) {
+            if (value == EMPTY) continue;
+            int slot = slot(value);
+            while (values[slot] != EMPTY) slot = (slot + 1) & mask;
+            values[slot] = value;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Banded LSH table of {@link SimHash} fingerprints: fingerprints within {@value MAX_DISTANCE} bits share
+ * at least one of the {@value BANDS} bands. Of near-duplicates the shortest, then smallest path is kept,
+ * whatever the order the pages come in.
+ */
+public class NearDuplicateIndex {
+    public static final int MAX_DISTANCE = 3;
+    private static final int BANDS = MAX_DISTANCE + 1;
+    private static final int BAND_BITS = Long.SIZE / BANDS;
+    private static final Comparator<String> PREFERENCE = Comparator.comparingInt(String::length)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final int[][] heads = new int[BANDS][1 << BAND_BITS];
+    private final int[][] next = new int[BANDS][16];
+    private long[] fingerprints = new long[16];
+    private String[] paths = new String[16];
+    private int size;
+    private int removed;
+
+    /**
+     * @return the path of the page itself if a preferred near-duplicate is kept, otherwise the paths
+     * of the pages it replaces
+     */
+    public List<String> add(long fingerprint, String path) {
+        if (fingerprint == 0) return List.of();
+        List<Integer> replaced = new ArrayList<>();
+        for (int band = 0; band < BANDS; band++) {
+            for (int entry = heads[band][bandValue(fingerprint, band)]; entry != 0; entry = next[band][entry - 1]) {
+                String keptPath = paths[entry - 1];
+                if (keptPath == null || keptPath.equals(path) || replaced.contains(entry - 1)
+                        || Long.bitCount(fingerprints[entry - 1] ^ fingerprint) > MAX_DISTANCE) continue;
+                if (PREFERENCE.compare(keptPath, path) < 0) return List.of(path);
+                replaced.add(entry - 1);
+            }
+        }
+        List<String> replacedPaths = new ArrayList<>(replaced.size());
+        for (int entry : replaced) {
+            replacedPaths.add(paths[entry]);
+            paths[entry] = null;
+            removed++;
+        }
+        if (size == fingerprints.length) grow();
+        fingerprints[size] = fingerprint;
+        paths[size] = path;
+        for (int band = 0; band < BANDS; band++) {
+            int value = bandValue(fingerprint, band);
+            next[band][size] = heads[band][value];
+            heads[band][value] = size + 1;
+        }
+        size++;
+        return replacedPaths;
+    }
+
+    public int size() {
+        return size - removed;
+    }
+
+    private static int bandValue(long fingerprint, int band) {
+        return (int) (fingerprint >>> band * BAND_BITS) & (1 << BAND_BITS) - 1;
+    }
+
+    private void grow() {
+        int capacity = fingerprints.length * 2;
+        fingerprints = Arrays.copyOf(fingerprints, capacity);
+        paths = Arrays.copyOf(paths, capacity);
+        for (int band = 0; band < BANDS; band++) next[band] = Arrays.copyOf(next[band], capacity);
+    }
+}
@@ -0,0 +1,89 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+public class ObjectIntHashMap<K> {
+    public static final int NO_VALUE = -1;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public ObjectIntHashMap() {
+        this(16);
+    }
+
+    public ObjectIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        keys = new Object[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int get(K key) {
+        int slot = slot(key);
+        Object current;
+        while ((current = keys[slot]) != null) {
+            if (current.equals(key)) return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != NO_VALUE;
+    }
+
+    public void put(K key, int value) {
+        int slot = slot(key);
+        Object current;
+        while ((current = keys[slot]) != null) {
+            if (current.equals(key)) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) resize();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<K> action) {
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != null) action.accept((K) keys[i], values[i]);
+    }
+
+    private int slot(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != null) put((K) oldKeys[i], oldValues[i]);
+    }
+}
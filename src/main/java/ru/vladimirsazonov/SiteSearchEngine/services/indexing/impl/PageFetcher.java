@@ -0,0 +1,215 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+import ru.vladimirsazonov.SiteSearchEngine.config.CrawlSettings;
+import ru.vladimirsazonov.SiteSearchEngine.model.StoredPage;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Non-blocking page fetches of one host, at most {@code maxConcurrentRequestsPerHost} in flight and paced by
+ * a token bucket. Only the first {@value MAX_BODY_SIZE} bytes of text and xml bodies are received,
+ * as Jsoup does by default.
+ */
+public class PageFetcher {
+    public static final int MAX_BODY_SIZE = 2 * 1024 * 1024;
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]+)");
+    private final HttpClient httpClient;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final int maxConcurrentRequests;
+    private final Duration timeout;
+    private final String userAgentName;
+    private final String referer;
+    private final Queue<PendingFetch> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final SiteCrawlMetrics metrics;
+    private final HttpResponse.BodyHandler<byte[]> bodyHandler = responseInfo ->
+            new LimitedBodySubscriber(isSuccessful(responseInfo.statusCode())
+                    && isSupportedContentType(getContentType(responseInfo.headers())) ? MAX_BODY_SIZE : 0);
+
+    public PageFetcher(HttpClient httpClient, CrawlSettings crawlSettings, String userAgentName, String referer,
+                       SiteCrawlMetrics metrics) {
+        this.httpClient = httpClient;
+        this.rateLimiter = new TokenBucketRateLimiter(crawlSettings.getRequestsPerSecond(), crawlSettings.getBurst());
+        this.maxConcurrentRequests = crawlSettings.getMaxConcurrentRequestsPerHost();
+        this.timeout = crawlSettings.getTimeout();
+        this.userAgentName = userAgentName;
+        this.referer = referer;
+        this.metrics = metrics;
+    }
+
+    public CompletableFuture<FetchResult> fetch(String url, StoredPage storedPage) {
+        PendingFetch pendingFetch = new PendingFetch(url, storedPage, new CompletableFuture<>());
+        waiting.add(pendingFetch);
+        queued.incrementAndGet();
+        dispatch();
+        return pendingFetch.result();
+    }
+
+    private void dispatch() {
+        while (!waiting.isEmpty()) {
+            int current = inFlight.get();
+            if (current >= maxConcurrentRequests) return;
+            if (!inFlight.compareAndSet(current, current + 1)) continue;
+            PendingFetch pendingFetch = waiting.poll();
+            if (pendingFetch == null) inFlight.decrementAndGet();
+            else {
+                queued.decrementAndGet();
+                send(pendingFetch);
+            }
+        }
+    }
+
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    private void send(PendingFetch pendingFetch) {
+        long delay = rateLimiter.reserve();
+        CompletableFuture.supplyAsync(() -> getRequest(pendingFetch.url(), pendingFetch.storedPage()),
+                        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, Runnable::run))
+                .thenCompose(request -> {
+                    long start = System.nanoTime();
+                    return httpClient.sendAsync(request, bodyHandler).whenComplete((response, ex) ->
+                            metrics.recordFetch(System.nanoTime() - start, response != null));
+                })
+                .handle((response, ex) -> toFetchResult(pendingFetch.url(), response, ex))
+                .thenAccept(fetchResult -> {
+                    inFlight.decrementAndGet();
+                    dispatch();
+                    pendingFetch.result().complete(fetchResult);
+                });
+    }
+
+    private HttpRequest getRequest(String url, StoredPage storedPage) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("User-Agent", userAgentName)
+                .header("Referer", referer)
+                .GET();
+        if (storedPage != null && storedPage.etag() != null) builder.header("If-None-Match", storedPage.etag());
+        if (storedPage != null && storedPage.lastModified() != null)
+            builder.header("If-Modified-Since", storedPage.lastModified());
+        return builder.build();
+    }
+
+    private FetchResult toFetchResult(String url, HttpResponse<byte[]> response, Throwable ex) {
+        if (ex != null) {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            return new FetchResult(url, 0, null, null, null, null,
+                    cause instanceof Exception e ? e : new Exception(cause));
+        }
+        int statusCode = response.statusCode();
+        if (statusCode == 304) return new FetchResult(url, statusCode, null, null, null, null, null);
+        if (!isSuccessful(statusCode))
+            return new FetchResult(url, statusCode, null, null, null, null,
+                    new HttpStatusException("HTTP error fetching URL", statusCode, url));
+        String contentType = getContentType(response.headers());
+        if (!isSupportedContentType(contentType))
+            return new FetchResult(url, statusCode, null, null, null, null, new UnsupportedMimeTypeException(
+                    "Unhandled content type. Must be text/*, application/xml, or application/*+xml",
+                    contentType, url));
+        return new FetchResult(url, statusCode, response.body(), getCharset(contentType),
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null), null);
+    }
+
+    private static boolean isSuccessful(int statusCode) {
+        return statusCode >= 200 && statusCode < 400;
+    }
+
+    private static String getContentType(HttpHeaders headers) {
+        return headers.firstValue("Content-Type").orElse("text/html");
+    }
+
+    /**
+     * Returns {@code null} for a missing or unsupported charset, so that Jsoup detects it from the page.
+     */
+    private static String getCharset(String contentType) {
+        Matcher matcher = CHARSET_PATTERN.matcher(contentType);
+        if (!matcher.find()) return null;
+        String charset = matcher.group(1);
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isSupportedContentType(String contentType) {
+        String mimeType = contentType.toLowerCase();
+        return mimeType.startsWith("text/") || mimeType.startsWith("application/xml")
+                || mimeType.startsWith("application/") && mimeType.contains("+xml");
+    }
+
+    private class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final int limit;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        LimitedBodySubscriber(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (limit == 0) cancel();
+            else subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            long received = 0;
+            for (ByteBuffer buffer : buffers) {
+                received += buffer.remaining();
+                byte[] chunk = new byte[Math.min(buffer.remaining(), limit - bytes.size())];
+                buffer.get(chunk);
+                bytes.write(chunk, 0, chunk.length);
+            }
+            metrics.recordDownload(received);
+            if (bytes.size() >= limit) cancel();
+            else subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(bytes.toByteArray());
+        }
+
+        private void cancel() {
+            subscription.cancel();
+            body.complete(bytes.toByteArray());
+        }
+    }
+
+    private record PendingFetch(String url, StoredPage storedPage, CompletableFuture<FetchResult> result) {
+    }
+}
@@ -2,117 +2,147 @@ package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
 
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
-import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
-import org.springframework.beans.factory.annotation.Value;
 import ru.vladimirsazonov.SiteSearchEngine.model.Selector;
-import ru.vladimirsazonov.SiteSearchEngine.repositories.SelectorRepository;
-import ru.vladimirsazonov.SiteSearchEngine.services.morphology.MorphologyService;
+import ru.vladimirsazonov.SiteSearchEngine.model.StoredPage;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Positions;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 
 @Data
 @Slf4j
-public class RecursiveLinkHandleTask extends RecursiveTask<List<LinkHandleTaskResult>> {
+public class RecursiveLinkHandleTask extends RecursiveAction {
+    private static final int SELECTOR_POSITION_GAP = 100;
     private static List<Selector> selectors;
 
-    private final int siteId;
-    private final String siteUrl;
-    private final String parentUrl;
-    private final MorphologyService morphologyService;
-    private final SelectorRepository selectorRepository;
-    private final String userAgentName;
-    private final String referer;
-    private int statusCode;
+    private final SiteCrawler crawler;
+    private final FetchResult fetchResult;
+    private final int depth;
     private Document document;
-    private Exception ex;
-    private boolean isSinglePageMode;
 
     private void initSelectors() {
-        selectors = selectorRepository.findAll();
+        selectors = crawler.getSelectorRepository().findAll();
     }
 
-    private String getPath() {
-        String path = siteUrl.substring(parentUrl.length());
-        if (path.isEmpty()) path = "/";
-        return path;
+    private void parseDocument(StoredPage storedPage) {
+        Exception ex = fetchResult.exception();
+        if (ex != null) {
+            log.warn("failed to obtain %s: %s -> %s".formatted(fetchResult.url(), ex.getClass().getName(),
+                    ex.getMessage()));
+            return;
+        }
+        if (fetchResult.isNotModified()) {
+            if (storedPage != null)
+                document = Jsoup.parse(crawler.getDao().findPageContentById(storedPage.id()), fetchResult.url());
+            return;
+        }
+        try {
+            document = Jsoup.parse(new ByteArrayInputStream(fetchResult.body()), fetchResult.charset(),
+                    fetchResult.url());
+        } catch (IOException e) {
+            log.warn("failed to parse %s: %s".formatted(fetchResult.url(), e.getMessage()));
+        }
     }
 
-    private void getConnection() {
-        Connection connection;
-        try {
-            Thread.sleep(new Random().nextInt(100) + 50);
-            connection = Jsoup.connect(siteUrl).timeout(1500)
-                    .userAgent(userAgentName).referrer(referer);
-            Connection.Response response = connection.execute();
-            statusCode = response.statusCode();
-            document = response.parse();
-        } catch (Exception e) {
-            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
-            else if (e instanceof HttpStatusException) {
-                statusCode = ((HttpStatusException) e).getStatusCode();
+    /**
+     * Selectors are {@value SELECTOR_POSITION_GAP} positions apart, so that no phrase spans two of them.
+     */
+    private void setLemmasAndRanks(LinkHandleTaskResult linkHandleTaskResult) {
+        if (selectors == null) initSelectors();
+        Map<String, Float> lemmasAndRanksMap = new HashMap<>();
+        Map<String, Positions.Builder> positions = new HashMap<>();
+        int tokenCount = 0;
+        int base = 0;
+        for (Selector s : selectors) {
+            float weight = s.getWeight();
+            int selectorBase = base;
+            Map<String, Integer> frequencies = new HashMap<>();
+            base += SELECTOR_POSITION_GAP + crawler.getMorphologyService().forEachLemma(
+                    document.select(s.getSelector()).text(), (lemma, position) -> {
+                        frequencies.merge(lemma, 1, Integer::sum);
+                        positions.computeIfAbsent(lemma, l -> new Positions.Builder()).add(selectorBase + position);
+                    });
+            for (Map.Entry<String, Integer> lemma : frequencies.entrySet()) {
+                lemmasAndRanksMap.merge(lemma.getKey(), lemma.getValue() * weight, Float::sum);
+                tokenCount += lemma.getValue();
             }
-            ex = e;
-            log.warn("failed to obtain %s: %s -> %s".formatted(siteUrl, e.getClass().getName(), e.getMessage()));
         }
+        Map<String, byte[]> lemmasPositionsMap = new HashMap<>(positions.size() * 4 / 3 + 1);
+        positions.forEach((lemma, builder) -> lemmasPositionsMap.put(lemma, builder.build()));
+        linkHandleTaskResult.setLemmasAndRanksMap(lemmasAndRanksMap);
+        linkHandleTaskResult.setLemmasPositionsMap(lemmasPositionsMap);
+        linkHandleTaskResult.setTokenCount(tokenCount);
+        linkHandleTaskResult.setFingerprint(SimHash.of(lemmasAndRanksMap));
     }
 
     @Override
-    public List<LinkHandleTaskResult> compute() {
-        getConnection();
-        String pagePath = getPath();
-        LinkHandleTaskResult linkHandleTaskResult = new LinkHandleTaskResult(pagePath, statusCode, siteId,
-                document != null ? document.html() : "");
-        List<LinkHandleTaskResult> taskResultList = new ArrayList<>() {{
-            add(linkHandleTaskResult);
-        }};
-        if (ex != null) linkHandleTaskResult.setException(ex);
+    public void compute() {
+        try {
+            handlePage();
+        } finally {
+            crawler.pageHandled();
+        }
+    }
+
+    private void handlePage() {
+        String path = crawler.getPath(fetchResult.url());
+        StoredPage storedPage = crawler.getStoredPages().get(path);
+        parseDocument(storedPage);
         if (document == null) {
+            LinkHandleTaskResult linkHandleTaskResult = new LinkHandleTaskResult(path, fetchResult.statusCode(),
+                    crawler.getSiteId(), "");
+            linkHandleTaskResult.setException(fetchResult.exception());
             linkHandleTaskResult.setLemmasAndRanksMap(Map.of());
-            return taskResultList;
+            putResult(linkHandleTaskResult);
+            return;
         }
-        if (selectors == null) initSelectors();
-        Map<String, Float> lemmasAndRanksMap = new HashMap<>();
-        selectors.forEach(s -> {
-            float weight = s.getWeight();
-            morphologyService.getLemmasAndFrequenciesMap
-                            (document.select(s.getSelector()).text())
-                    .forEach((lemma, frequency) ->
-                            lemmasAndRanksMap.merge(lemma, frequency * weight, Float::sum));
-        });
-        linkHandleTaskResult.setLemmasAndRanksMap(lemmasAndRanksMap);
-        Set<String> childLinks;
-        if (isSinglePageMode || (childLinks = getChildLinks()).isEmpty()) return taskResultList;
-        List<LinkHandleTaskResult> subTasksResultList = getTaskResultList(childLinks);
-        subTasksResultList.addAll(taskResultList);
-        return subTasksResultList;
+        String title = document.title();
+        String text = document.body().text();
+        long contentHash = Fnv1aHash.append(Fnv1aHash.of(title), text);
+        boolean unchanged = fetchResult.isNotModified()
+                || storedPage != null && storedPage.contentHash() == contentHash;
+        LinkHandleTaskResult linkHandleTaskResult = new LinkHandleTaskResult(path, fetchResult.statusCode(),
+                crawler.getSiteId(), unchanged ? "" : document.html());
+        linkHandleTaskResult.setUnchanged(unchanged);
+        linkHandleTaskResult.setEtag(fetchResult.etag());
+        linkHandleTaskResult.setLastModified(fetchResult.lastModified());
+        if (unchanged) linkHandleTaskResult.setLemmasAndRanksMap(Map.of());
+        else {
+            linkHandleTaskResult.setTitle(title);
+            linkHandleTaskResult.setText(text);
+            linkHandleTaskResult.setContentHash(contentHash);
+            long start = System.nanoTime();
+            setLemmasAndRanks(linkHandleTaskResult);
+            crawler.getMetrics().recordLemmatization(System.nanoTime() - start);
+        }
+        Set<String> childLinks = crawler.isSinglePageMode() ? Set.of() : getChildLinks();
+        document = null;
+        // children are admitted before the page can be written, so a checkpoint never has a written page
+        // whose links are missing from the frontier
+        childLinks.forEach(link -> crawler.submit(link, depth + 1));
+        putResult(linkHandleTaskResult);
     }
 
-    private List<LinkHandleTaskResult> getTaskResultList(Set<String> childLinks) {
-        return invokeAll(childLinks.stream()
-                .map(link -> new RecursiveLinkHandleTask(siteId, link, parentUrl, morphologyService, selectorRepository, userAgentName, referer))
-                .toList())
-                .stream()
-                .flatMap(task -> task.join().stream())
-                .collect(Collectors.toCollection(ArrayList::new));
+    private void putResult(LinkHandleTaskResult linkHandleTaskResult) {
+        try {
+            crawler.putResult(linkHandleTaskResult);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public Set<String> getChildLinks() {
+        String sitePrefix = crawler.getSiteUrl().endsWith("/") ? crawler.getSiteUrl() : crawler.getSiteUrl() + "/";
         Elements strings = document.select("a[href]");
         return strings.stream()
-                .map(e -> {
-                    String link = e.absUrl("href");
-                    int index = link.indexOf("/", siteUrl.length() + 1);
-                    if (index != -1) link = link.substring(0, index);
-                    return link;
-                })
-                .filter(e -> e.matches(siteUrl.endsWith("/") ?
-                        siteUrl + ".+" : siteUrl + "/.+")
+                .map(e -> e.absUrl("href"))
+                .filter(e -> e.startsWith(sitePrefix) && e.length() > sitePrefix.length()
                         && !e.contains("#")
                         && !e.contains("=")
                         && !e.contains("?")
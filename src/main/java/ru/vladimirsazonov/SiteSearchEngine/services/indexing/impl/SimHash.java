@@ -0,0 +1,37 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import java.util.Map;
+
+/**
+ * Pages with fewer than {@value MIN_LEMMAS} lemmas get no fingerprint, {@code 0}.
+ */
+public final class SimHash {
+    static final int MIN_LEMMAS = 10;
+
+    private SimHash() {
+    }
+
+    public static long of(Map<String, Float> weights) {
+        if (weights.size() < MIN_LEMMAS) return 0;
+        float[] votes = new float[Long.SIZE];
+        weights.forEach((lemma, weight) -> {
+            long hash = mix(Fnv1aHash.of(lemma));
+            for (int bit = 0; bit < Long.SIZE; bit++) votes[bit] += (hash >>> bit & 1) != 0 ? weight : -weight;
+        });
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++)
+            if (votes[bit] > 0) fingerprint |= 1L << bit;
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Finalizer of MurmurHash3.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+}
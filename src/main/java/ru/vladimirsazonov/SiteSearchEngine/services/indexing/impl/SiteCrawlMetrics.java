@@ -0,0 +1,133 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import io.micrometer.core.instrument.*;
+import lombok.Getter;
+import ru.vladimirsazonov.SiteSearchEngine.dto.StatisticsResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Events go both to the Micrometer meters of the site url, which count over the crawls,
+ * and to the totals of this crawl shown in the statistics.
+ */
+public class SiteCrawlMetrics {
+    private final MeterRegistry meterRegistry;
+    @Getter
+    private final String siteUrl;
+    private final long startNanos = System.nanoTime();
+    private final Counter fetchedPagesCounter;
+    private final Timer fetchTimer;
+    private final Counter downloadedBytesCounter;
+    private final Timer lemmatizationTimer;
+    private final Counter writtenRowsCounter;
+    private final Counter duplicatePagesCounter;
+    private final LongAdder fetchedPages = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder fetchNanos = new LongAdder();
+    private final LongAdder downloadedBytes = new LongAdder();
+    private final LongAdder lemmatizedPages = new LongAdder();
+    private final LongAdder lemmatizationNanos = new LongAdder();
+    private final LongAdder writtenRows = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final List<Meter> gauges = new ArrayList<>();
+    private volatile SiteCrawler crawler;
+    private volatile SiteIndexWriter writer;
+
+    public SiteCrawlMetrics(MeterRegistry meterRegistry, String siteUrl) {
+        this.meterRegistry = meterRegistry;
+        this.siteUrl = siteUrl;
+        fetchedPagesCounter = Counter.builder("crawl.pages.fetched").tag("site", siteUrl)
+                .description("Pages received from the site").register(meterRegistry);
+        fetchTimer = Timer.builder("crawl.fetch.latency").tag("site", siteUrl).publishPercentileHistogram()
+                .description("Time from sending a request to receiving the whole page").register(meterRegistry);
+        downloadedBytesCounter = Counter.builder("crawl.downloaded").tag("site", siteUrl).baseUnit("bytes")
+                .register(meterRegistry);
+        lemmatizationTimer = Timer.builder("crawl.lemmatization").tag("site", siteUrl)
+                .description("Lemmatization time of a changed page").register(meterRegistry);
+        writtenRowsCounter = Counter.builder("crawl.rows.written").tag("site", siteUrl)
+                .description("Pages, lemmas and index rows inserted").register(meterRegistry);
+        duplicatePagesCounter = Counter.builder("crawl.pages.duplicate").tag("site", siteUrl)
+                .description("Near-duplicate pages skipped").register(meterRegistry);
+    }
+
+    public synchronized void watch(SiteCrawler crawler, SiteIndexWriter writer) {
+        this.crawler = crawler;
+        this.writer = writer;
+        gauges.add(Gauge.builder("crawl.queue.depth", crawler, c -> c.getPageFetcher().getQueuedCount())
+                .tags("site", siteUrl, "stage", "fetch").register(meterRegistry));
+        gauges.add(Gauge.builder("crawl.queue.depth", writer, w -> w.getQueue().size())
+                .tags("site", siteUrl, "stage", "write").register(meterRegistry));
+        gauges.add(Gauge.builder("crawl.frontier.remaining", crawler, SiteCrawler::getEstimatedRemaining)
+                .tag("site", siteUrl).register(meterRegistry));
+    }
+
+    public synchronized void close() {
+        gauges.forEach(meterRegistry::remove);
+        gauges.clear();
+        crawler = null;
+        writer = null;
+    }
+
+    /**
+     * @param received whether a response came, failed requests count only to the latency
+     */
+    void recordFetch(long nanos, boolean received) {
+        fetchTimer.record(nanos, TimeUnit.NANOSECONDS);
+        fetches.increment();
+        fetchNanos.add(nanos);
+        if (!received) return;
+        fetchedPagesCounter.increment();
+        fetchedPages.increment();
+    }
+
+    void recordDownload(long bytes) {
+        downloadedBytesCounter.increment(bytes);
+        downloadedBytes.add(bytes);
+    }
+
+    void recordLemmatization(long nanos) {
+        lemmatizationTimer.record(nanos, TimeUnit.NANOSECONDS);
+        lemmatizedPages.increment();
+        lemmatizationNanos.add(nanos);
+    }
+
+    void recordWrite(long rows) {
+        writtenRowsCounter.increment(rows);
+        writtenRows.add(rows);
+    }
+
+    void recordDuplicate() {
+        duplicatePagesCounter.increment();
+    }
+
+    void recordError(Exception ex) {
+        String type = ex.getClass().getSimpleName();
+        meterRegistry.counter("crawl.errors", "site", siteUrl, "type", type).increment();
+        errors.computeIfAbsent(type, t -> new LongAdder()).increment();
+    }
+
+    public StatisticsResponse.CrawlProgress getProgress() {
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        SiteCrawler currentCrawler = crawler;
+        SiteIndexWriter currentWriter = writer;
+        Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((type, count) -> errorCounts.put(type, count.sum()));
+        return new StatisticsResponse.CrawlProgress(fetchedPages.sum(), fetchedPages.sum() / seconds,
+                currentCrawler == null ? 0 : currentCrawler.getPageFetcher().getQueuedCount(),
+                currentWriter == null ? 0 : currentWriter.getQueue().size(),
+                downloadedBytes.sum(), toMeanMillis(fetchNanos, fetches),
+                toMeanMillis(lemmatizationNanos, lemmatizedPages), writtenRows.sum(), writtenRows.sum() / seconds,
+                errorCounts, currentCrawler == null ? 0 : currentCrawler.getEstimatedRemaining());
+    }
+
+    private static double toMeanMillis(LongAdder nanos, LongAdder count) {
+        long n = count.sum();
+        return n == 0 ? 0 : nanos.sum() / 1e6 / n;
+    }
+}
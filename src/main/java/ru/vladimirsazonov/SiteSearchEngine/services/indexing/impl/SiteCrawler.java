@@ -0,0 +1,91 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.vladimirsazonov.SiteSearchEngine.model.StoredPage;
+import ru.vladimirsazonov.SiteSearchEngine.repositories.SelectorRepository;
+import ru.vladimirsazonov.SiteSearchEngine.services.morphology.MorphologyService;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Getter
+@RequiredArgsConstructor
+public class SiteCrawler {
+    private final int siteId;
+    private final String siteUrl;
+    private final SiteFrontier frontier;
+    private final PageFetcher pageFetcher;
+    private final ForkJoinPool parserPool;
+    private final MorphologyService morphologyService;
+    private final SelectorRepository selectorRepository;
+    private final DAO dao;
+    private final Map<String, StoredPage> storedPages;
+    private final BlockingQueue<LinkHandleTaskResult> results;
+    private final boolean singlePageMode;
+    private final SiteCrawlMetrics metrics;
+    private final AtomicInteger pendingPages = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    public boolean isDone() {
+        return pendingPages.get() == 0;
+    }
+
+    /**
+     * Drops the results, so that no parser task stays blocked on the full queue of a failed writer.
+     */
+    public void cancel() {
+        cancelled = true;
+        results.clear();
+    }
+
+    void putResult(LinkHandleTaskResult result) throws InterruptedException {
+        while (!cancelled)
+            if (results.offer(result, 100, TimeUnit.MILLISECONDS)) return;
+    }
+
+    public void submit(String url, int depth) {
+        if (frontier.admit(url, depth)) fetch(url, depth);
+    }
+
+    public void resume() {
+        frontier.getPendingUrls().forEach(pendingUrl -> fetch(pendingUrl.url(), pendingUrl.depth()));
+    }
+
+    private void fetch(String url, int depth) {
+        if (cancelled) return;
+        pendingPages.incrementAndGet();
+        pageFetcher.fetch(url, storedPages.get(getPath(url))).thenAccept(fetchResult -> {
+            try {
+                parserPool.execute(new RecursiveLinkHandleTask(this, fetchResult, depth));
+            } catch (RejectedExecutionException e) {
+                log.warn("parser pool is shut down, page '%s' is skipped".formatted(url));
+                pageHandled();
+            }
+        });
+    }
+
+    /**
+     * The pages admitted and not handled yet or, if more, the stored pages of the site not handled yet.
+     */
+    public int getEstimatedRemaining() {
+        int pending = pendingPages.get();
+        int handled = frontier.getVisitedCount() - pending;
+        return Math.max(pending, Math.min(storedPages.size(), frontier.getMaxPages()) - handled);
+    }
+
+    public String getPath(String url) {
+        String path = url.substring(siteUrl.length());
+        return path.isEmpty() ? "/" : path;
+    }
+
+    void pageHandled() {
+        pendingPages.decrementAndGet();
+    }
+}
@@ -0,0 +1,108 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Visited paths are kept as 64-bit FNV-1a hashes only, so a path colliding with a visited one is not
+ * crawled: with n paths the chance is about n^2 / 2^65, below 10^-7 for a million pages.
+ */
+public class SiteFrontier {
+    private final String siteUrl;
+    private final int maxDepth;
+    private final int maxPages;
+    private final LongHashSet visitedPaths;
+    private final Map<String, PendingUrl> pendingUrls = new HashMap<>();
+
+    public SiteFrontier(String siteUrl, int maxDepth, int maxPages) {
+        this(siteUrl, maxDepth, maxPages, new LongHashSet(1024));
+    }
+
+    private SiteFrontier(String siteUrl, int maxDepth, int maxPages, LongHashSet visitedPaths) {
+        this.siteUrl = siteUrl;
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        this.visitedPaths = visitedPaths;
+    }
+
+    public static SiteFrontier restore(String siteUrl, int maxDepth, int maxPages, Snapshot snapshot) {
+        SiteFrontier frontier = new SiteFrontier(siteUrl, maxDepth, maxPages,
+                LongHashSet.fromBytes(snapshot.visitedPaths()));
+        decodePendingUrls(snapshot.pendingUrls())
+                .forEach(pendingUrl -> frontier.pendingUrls.put(frontier.getPath(pendingUrl.url()), pendingUrl));
+        return frontier;
+    }
+
+    public synchronized boolean admit(String url, int depth) {
+        if (depth > maxDepth || visitedPaths.size() >= maxPages) return false;
+        String path = getPath(url);
+        if (!visitedPaths.add(Fnv1aHash.of(path))) return false;
+        pendingUrls.put(path, new PendingUrl(url, depth));
+        return true;
+    }
+
+    public synchronized void complete(String path) {
+        pendingUrls.remove(path);
+    }
+
+    public synchronized List<PendingUrl> getPendingUrls() {
+        return List.copyOf(pendingUrls.values());
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public synchronized int getVisitedCount() {
+        return visitedPaths.size();
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(visitedPaths.toBytes(), encodePendingUrls(pendingUrls.values()));
+    }
+
+    private String getPath(String url) {
+        String path = url.startsWith(siteUrl) ? url.substring(siteUrl.length()) : url;
+        return path.isEmpty() ? "/" : path;
+    }
+
+    private static byte[] encodePendingUrls(Collection<PendingUrl> pendingUrls) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(pendingUrls.size());
+            for (PendingUrl pendingUrl : pendingUrls) {
+                out.writeUTF(pendingUrl.url());
+                out.writeInt(pendingUrl.depth());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<PendingUrl> decodePendingUrls(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            int count = in.readInt();
+            List<PendingUrl> pendingUrls = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) pendingUrls.add(new PendingUrl(in.readUTF(), in.readInt()));
+            return pendingUrls;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record PendingUrl(String url, int depth) {
+    }
+
+    /**
+     * Visited path hashes, 8 bytes each, and the deflated pending urls with their depths.
+     */
+    public record Snapshot(byte[] visitedPaths, byte[] pendingUrls) {
+    }
+}
@@ -0,0 +1,254 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import ru.vladimirsazonov.SiteSearchEngine.model.CrawlCheckpoint;
+import ru.vladimirsazonov.SiteSearchEngine.model.IndexEntry;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.Page;
+import ru.vladimirsazonov.SiteSearchEngine.model.Site;
+import ru.vladimirsazonov.SiteSearchEngine.model.StoredPage;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Writes the page results of a crawl as the shadow {@code generation} of the site, invisible to search until
+ * it is activated: changed and disappeared pages keep their live rows, which are only retired.
+ * Pages are completed in the frontier only once their batch is written, so a crawl resumed from
+ * a {@link CrawlCheckpoint} fetches only the pages not written yet.
+ */
+@Slf4j
+public class SiteIndexWriter {
+    private static final int QUEUE_CAPACITY = 200;
+    private static final int BATCH_SIZE = 100;
+
+    @Getter
+    private final BlockingQueue<LinkHandleTaskResult> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ObjectIntHashMap<String> lemmaIds = new ObjectIntHashMap<>();
+    private final NearDuplicateIndex nearDuplicates = new NearDuplicateIndex();
+    private final List<String> replacedDuplicatePaths = new ArrayList<>();
+    private LongHashSet seenPaths = new LongHashSet();
+    private final Site site;
+    @Getter
+    private final int generation;
+    private final DAO dao;
+    private final Map<String, StoredPage> storedPages;
+    private final SiteFrontier frontier;
+    private final SiteCrawlMetrics metrics;
+    @Setter
+    private Duration checkpointInterval;
+    @Setter
+    private boolean skipNearDuplicates;
+    private long lastCheckpointNanos = System.nanoTime();
+    @Getter
+    private int resultsCount;
+    @Getter
+    private int failuresCount;
+    @Getter
+    private int duplicatesCount;
+    @Getter
+    private String lastErrorMessage = "";
+    private long insertedRows;
+    private long writeNanos;
+
+    public SiteIndexWriter(Site site, int generation, DAO dao, Map<String, StoredPage> storedPages,
+                           SiteFrontier frontier, SiteCrawlMetrics metrics) {
+        this.site = site;
+        this.generation = generation;
+        this.dao = dao;
+        this.storedPages = storedPages;
+        this.frontier = frontier;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Continues the counters and the seen paths of the crawl the checkpoint was saved by,
+     * the stored pages it has seen are the pages kept so far.
+     */
+    public void restore(CrawlCheckpoint checkpoint) {
+        resultsCount = checkpoint.getResultsCount();
+        failuresCount = checkpoint.getFailuresCount();
+        if (checkpoint.getLastError() != null) lastErrorMessage = checkpoint.getLastError();
+        seenPaths = LongHashSet.fromBytes(checkpoint.getSeenPaths());
+        storedPages.values().forEach(storedPage -> {
+            if (seenPaths.contains(Fnv1aHash.of(storedPage.path())))
+                nearDuplicates.add(storedPage.fingerprint(), storedPage.path());
+        });
+    }
+
+    public boolean isAllFailed() {
+        return resultsCount > 0 && failuresCount == resultsCount;
+    }
+
+    public boolean isEmpty() {
+        return resultsCount == 0;
+    }
+
+    public void writeUntil(BooleanSupplier crawlFinished) throws InterruptedException {
+        List<LinkHandleTaskResult> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            boolean finished = crawlFinished.getAsBoolean();
+            LinkHandleTaskResult result;
+            try {
+                result = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                if (checkpointInterval != null) saveCheckpoint();
+                throw e;
+            }
+            if (result == null) {
+                if (finished && queue.isEmpty()) break;
+                continue;
+            }
+            batch.add(result);
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            long start = System.nanoTime();
+            long rowsBefore = insertedRows;
+            writeBatch(batch);
+            writeNanos += System.nanoTime() - start;
+            metrics.recordWrite(insertedRows - rowsBefore);
+            batch.forEach(written -> frontier.complete(written.getPath()));
+            batch.clear();
+            if (checkpointInterval != null && System.nanoTime() - lastCheckpointNanos >= checkpointInterval.toNanos())
+                saveCheckpoint();
+        }
+        log.info("Site %s: %d rows inserted in %d ms, %d rows/s, %d near-duplicate pages skipped or retired".formatted(
+                site.getUrl(), insertedRows, TimeUnit.NANOSECONDS.toMillis(writeNanos),
+                writeNanos == 0 ? 0 : insertedRows * TimeUnit.SECONDS.toNanos(1) / writeNanos, duplicatesCount));
+    }
+
+    public void saveCheckpoint() {
+        SiteFrontier.Snapshot snapshot = frontier.snapshot();
+        dao.saveCheckpoint(new CrawlCheckpoint(site.getId(), generation, resultsCount, failuresCount,
+                lastErrorMessage, seenPaths.toBytes(), snapshot.visitedPaths(), snapshot.pendingUrls(),
+                LocalDateTime.now()));
+        lastCheckpointNanos = System.nanoTime();
+    }
+
+    public void retireDisappearedPages() {
+        List<Integer> disappearedPageIds = storedPages.values().stream()
+                .filter(storedPage -> !seenPaths.contains(Fnv1aHash.of(storedPage.path())))
+                .map(StoredPage::id)
+                .toList();
+        dao.retirePages(disappearedPageIds, generation);
+    }
+
+    private void writeBatch(List<LinkHandleTaskResult> batch) {
+        List<LinkHandleTaskResult> pageResults = new ArrayList<>(batch.size());
+        List<Page> validatorUpdates = new ArrayList<>();
+        for (LinkHandleTaskResult result : batch) {
+            resultsCount++;
+            Exception ex = result.getException();
+            StoredPage storedPage = storedPages.get(result.getPath());
+            if (ex == null && isNearDuplicate(result, storedPage)) {
+                recordDuplicate("page %s skipped as a near-duplicate".formatted(result.getPath()));
+                continue;
+            }
+            if (!isGone(result)) seenPaths.add(Fnv1aHash.of(result.getPath()));
+            if (ex != null) registerFailure(result, ex);
+            else if (result.isUnchanged()) {
+                if (storedPage != null && hasNewValidators(storedPage, result)) {
+                    Page page = createPage(result);
+                    page.setId(storedPage.id());
+                    validatorUpdates.add(page);
+                }
+            } else if (result.getStatusCode() == 200) pageResults.add(result);
+        }
+        if (!validatorUpdates.isEmpty()) dao.updatePagesValidators(validatorUpdates);
+        if (!pageResults.isEmpty()) writePages(pageResults);
+        if (!replacedDuplicatePaths.isEmpty()) {
+            dao.retirePagesByPaths(site.getId(), List.copyOf(replacedDuplicatePaths), generation);
+            replacedDuplicatePaths.clear();
+        }
+    }
+
+    private void writePages(List<LinkHandleTaskResult> pageResults) {
+        List<Page> pages = new ArrayList<>(pageResults.size());
+        List<Integer> replacedPageIds = new ArrayList<>();
+        for (LinkHandleTaskResult result : pageResults) {
+            pages.add(createPage(result));
+            StoredPage storedPage = storedPages.get(result.getPath());
+            if (storedPage != null) replacedPageIds.add(storedPage.id());
+        }
+        dao.savePages(pages);
+        dao.retirePages(replacedPageIds, generation);
+        ObjectIntHashMap<String> pageIds = new ObjectIntHashMap<>(pages.size());
+        pages.forEach(page -> pageIds.put(page.getPath(), page.getId()));
+        updateLemmas(pageResults);
+        List<IndexEntry> entries = new ArrayList<>();
+        for (LinkHandleTaskResult result : pageResults) {
+            int pageId = pageIds.get(result.getPath());
+            result.getLemmasAndRanksMap().forEach((lemma, rank) -> entries.add(new IndexEntry(lemmaIds.get(lemma),
+                    pageId, rank, result.getLemmasPositionsMap().get(lemma))));
+        }
+        dao.saveIndexEntries(entries);
+        insertedRows += pages.size() + entries.size();
+    }
+
+    private boolean isNearDuplicate(LinkHandleTaskResult result, StoredPage storedPage) {
+        if (!skipNearDuplicates) return false;
+        long fingerprint;
+        if (result.isUnchanged()) fingerprint = storedPage == null ? 0 : storedPage.fingerprint();
+        else if (result.getStatusCode() == 200) fingerprint = result.getFingerprint();
+        else return false;
+        List<String> discardedPaths = nearDuplicates.add(fingerprint, result.getPath());
+        if (discardedPaths.contains(result.getPath())) return true;
+        for (String replacedPath : discardedPaths) {
+            recordDuplicate("page %s retired as a near-duplicate of %s".formatted(replacedPath, result.getPath()));
+            replacedDuplicatePaths.add(replacedPath);
+        }
+        return false;
+    }
+
+    private void recordDuplicate(String message) {
+        duplicatesCount++;
+        metrics.recordDuplicate();
+        log.info("Site %s: %s".formatted(site.getUrl(), message));
+    }
+
+    private Page createPage(LinkHandleTaskResult result) {
+        Page page = new Page(result.getPath(), result.getStatusCode(), result.getContent(), site);
+        page.setGeneration(generation);
+        page.setTitle(result.getTitle());
+        page.setText(result.getText());
+        page.setContentHash(result.getContentHash());
+        page.setTokenCount(result.getTokenCount());
+        page.setFingerprint(result.getFingerprint());
+        page.setEtag(result.getEtag());
+        page.setLastModified(result.getLastModified());
+        return page;
+    }
+
+    private static boolean hasNewValidators(StoredPage storedPage, LinkHandleTaskResult result) {
+        return result.getEtag() != null && !result.getEtag().equals(storedPage.etag())
+                || result.getLastModified() != null && !result.getLastModified().equals(storedPage.lastModified());
+    }
+
+    private static boolean isGone(LinkHandleTaskResult result) {
+        return result.getStatusCode() == 404 || result.getStatusCode() == 410;
+    }
+
+    private void updateLemmas(List<LinkHandleTaskResult> pageResults) {
+        Map<String, Lemma> unresolvedLemmas = new HashMap<>();
+        pageResults.forEach(result -> result.getLemmasAndRanksMap().keySet().forEach(lemma -> {
+            if (!lemmaIds.containsKey(lemma)) unresolvedLemmas.computeIfAbsent(lemma, l -> new Lemma(l, 0, site));
+        }));
+        dao.saveLemmas(unresolvedLemmas.values());
+        insertedRows += unresolvedLemmas.size();
+        unresolvedLemmas.values().forEach(lemma -> lemmaIds.put(lemma.getLemma(), lemma.getId()));
+    }
+
+    private void registerFailure(LinkHandleTaskResult result, Exception ex) {
+        metrics.recordError(ex);
+        lastErrorMessage = ("Total errors(s): %d. Last error: obtain path '%s' failed, exception type -> '%s', " +
+                "exception message -> %s; ").formatted(++failuresCount,
+                result.getPath().equals("/") ? site.getUrl() : result.getPath(),
+                ex.getClass().getName(), ex.getMessage());
+    }
+}
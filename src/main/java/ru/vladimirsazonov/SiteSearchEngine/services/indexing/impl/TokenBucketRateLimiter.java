@@ -0,0 +1,35 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class TokenBucketRateLimiter {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private long theoreticalArrivalNanos;
+
+    public TokenBucketRateLimiter(double requestsPerSecond, int burst) {
+        this(requestsPerSecond, burst, System::nanoTime);
+    }
+
+    public TokenBucketRateLimiter(double requestsPerSecond, int burst, LongSupplier nanoClock) {
+        if (requestsPerSecond <= 0 || burst < 1)
+            throw new IllegalArgumentException("requestsPerSecond must be positive and burst at least 1");
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.burstNanos = (burst - 1) * intervalNanos;
+        this.nanoClock = nanoClock;
+        this.theoreticalArrivalNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Returns the delay in nanoseconds after which the reserved token becomes available.
+     */
+    public synchronized long reserve() {
+        long now = nanoClock.getAsLong();
+        theoreticalArrivalNanos = Math.max(theoreticalArrivalNanos, now);
+        long startNanos = Math.max(now, theoreticalArrivalNanos - burstNanos);
+        theoreticalArrivalNanos += intervalNanos;
+        return startNanos - now;
+    }
+}
@@ -0,0 +1,47 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.morphology;
+
+import java.util.Arrays;
+
+/**
+ * Words are lowercased into a thread-local buffer which is only valid inside the consumer call.
+ */
+public final class CyrillicTokenizer {
+    private static final ThreadLocal<char[]> BUFFERS = ThreadLocal.withInitial(() -> new char[64]);
+
+    private CyrillicTokenizer() {
+    }
+
+    @FunctionalInterface
+    public interface TokenConsumer {
+        void accept(char[] buffer, int length, int start);
+    }
+
+    public static void tokenize(CharSequence text, TokenConsumer consumer) {
+        char[] buffer = BUFFERS.get();
+        int length = 0;
+        int textLength = text.length();
+        for (int i = 0; i <= textLength; i++) {
+            char lowerCase = i < textLength ? toLowerCase(text.charAt(i)) : 0;
+            if (lowerCase != 0) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                    BUFFERS.set(buffer);
+                }
+                buffer[length++] = lowerCase;
+            } else if (length > 0) {
+                consumer.accept(buffer, length, i - length);
+                length = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code 0} for a character other than a Cyrillic letter.
+     */
+    static char toLowerCase(char c) {
+        if (c >= 'а' && c <= 'я' || c == 'ё') return c;
+        if (c >= 'А' && c <= 'Я') return (char) (c + ('а' - 'А'));
+        if (c == 'Ё') return 'ё';
+        return 0;
+    }
+}
@@ -7,4 +7,17 @@ public interface MorphologyService {
     Set<String> getLemmasSet(String text);
     Map<String, Integer> getLemmasAndFrequenciesMap(String text);
     Set<String> getLemmasWordForms(String lemma);
+
+    /**
+     * Passes the lemmas of every word of the text to the consumer along with the position of the word,
+     * stop words take positions too but have no lemmas.
+     *
+     * @return the number of words
+     */
+    int forEachLemma(String text, LemmaConsumer consumer);
+
+    @FunctionalInterface
+    interface LemmaConsumer {
+        void accept(String lemma, int position);
+    }
 }
@@ -1,6 +1,10 @@
 package ru.vladimirsazonov.SiteSearchEngine.services.morphology;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.demidko.aot.WordformMeaning;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.springframework.stereotype.Service;
@@ -12,6 +16,8 @@ import java.util.stream.Collectors;
 @Service
 public class MorphologyServiceImpl implements MorphologyService {
 
+    private static final int WORDS_CACHE_SIZE = 200_000;
+    private static final String[] STOP_PARTS_OF_SPEECH = {"МЕЖД", "ПРЕДЛ", "СОЮЗ", "МС", "ЧАСТ", "КР_ПРИЛ"};
     private static LuceneMorphology luceneMorph;
 
     static {
@@ -22,6 +28,15 @@ public class MorphologyServiceImpl implements MorphologyService {
         }
     }
 
+    private final Cache<WordKey, String[]> wordsCache = Caffeine.newBuilder()
+            .maximumSize(WORDS_CACHE_SIZE)
+            .recordStats()
+            .build();
+
+    public MorphologyServiceImpl(MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, wordsCache, "morphology.words");
+    }
+
     @Override
     public Map<String, Integer> getLemmasAndFrequenciesMap(String text) {
         List<String> lemmas = getLemmasList(text);
@@ -50,17 +65,43 @@ public class MorphologyServiceImpl implements MorphologyService {
         return new HashSet<>(lemmas);
     }
 
+    @Override
+    public int forEachLemma(String text, LemmaConsumer consumer) {
+        if (text.isBlank()) return 0;
+        WordKey probe = new WordKey();
+        int[] position = {0};
+        CyrillicTokenizer.tokenize(text, (buffer, length, start) -> {
+            String[] wordLemmas = wordsCache.getIfPresent(probe.wrap(buffer, length));
+            if (wordLemmas == null) {
+                WordKey word = probe.copy();
+                wordLemmas = getWordLemmas(word.toString());
+                wordsCache.put(word, wordLemmas);
+            }
+            for (String lemma : wordLemmas) consumer.accept(lemma, position[0]);
+            position[0]++;
+        });
+        return position[0];
+    }
+
     private List<String> getLemmasList(String text) {
-        if (text.isBlank()) return List.of();
-        String[] words = text.split("[^А-ЯЁа-яё]+");
-        return Arrays.stream(words)
-                .filter(word -> !word.isBlank())
-                .map(String::toLowerCase)
-                .flatMap(word -> luceneMorph.getMorphInfo(word).stream())
-                .filter(morphInfo -> !morphInfo.contains("МЕЖД") && !morphInfo.contains("ПРЕДЛ")
-                        && !morphInfo.contains("СОЮЗ") && !morphInfo.contains("МС")
-                        && !morphInfo.contains("ЧАСТ") && !morphInfo.contains("КР_ПРИЛ"))
-                .map(morphInfo -> morphInfo.substring(0, morphInfo.indexOf("|")))
-                .toList();
+        List<String> lemmas = new ArrayList<>();
+        forEachLemma(text, (lemma, position) -> lemmas.add(lemma));
+        return lemmas;
+    }
+
+    /**
+     * Returns the lemmas of the word, none if it is a stop word.
+     */
+    private static String[] getWordLemmas(String word) {
+        return luceneMorph.getMorphInfo(word).stream()
+                .filter(morphInfo -> !isStopPartOfSpeech(morphInfo))
+                .map(morphInfo -> morphInfo.substring(0, morphInfo.indexOf("|")).intern())
+                .toArray(String[]::new);
+    }
+
+    private static boolean isStopPartOfSpeech(String morphInfo) {
+        for (String partOfSpeech : STOP_PARTS_OF_SPEECH)
+            if (morphInfo.contains(partOfSpeech)) return true;
+        return false;
     }
 }
@@ -0,0 +1,42 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.morphology;
+
+import java.util.Arrays;
+
+/**
+ * A reusable probe wraps the tokenizer buffer for lookups, only missing words are copied into their own key.
+ */
+final class WordKey {
+    private char[] chars;
+    private int length;
+    private int hash;
+
+    WordKey wrap(char[] chars, int length) {
+        this.chars = chars;
+        this.length = length;
+        int h = 0;
+        for (int i = 0; i < length; i++) h = 31 * h + chars[i];
+        hash = h;
+        return this;
+    }
+
+    WordKey copy() {
+        return new WordKey().wrap(Arrays.copyOf(chars, length), length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WordKey other) || hash != other.hash || length != other.length) return false;
+        return Arrays.equals(chars, 0, length, other.chars, 0, length);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,48 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
+
+/**
+ * Keys are versioned by {@link SiteVersions}.
+ */
+@Component
+@RequiredArgsConstructor
+public class LemmaStatistics {
+    public static final int ALL_SITES = 0;
+    private static final int MAXIMUM_SIZE = 100_000;
+
+    private final Cache<LemmaKey, Integer> frequencies = Caffeine.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .build();
+    private final Cache<SiteKey, Integer> pagesCounts = Caffeine.newBuilder().build();
+    private final SiteVersions versions = new SiteVersions();
+    private final DAO dao;
+
+    public int getFrequency(int siteId, String lemma) {
+        return frequencies.get(new LemmaKey(siteId, lemma, versions.current(siteId)), key -> siteId == ALL_SITES
+                ? dao.getTotalFrequencyForLemma(lemma)
+                : dao.getFrequencyForLemmaBySiteId(lemma, siteId));
+    }
+
+    public int getPagesCount(int siteId) {
+        return pagesCounts.get(new SiteKey(siteId, versions.current(siteId)), key -> siteId == ALL_SITES
+                ? (int) dao.getPagesTotalCount()
+                : dao.getPagesCountBySiteId(siteId));
+    }
+
+    public void invalidateSite(int siteId) {
+        versions.bump(siteId);
+        frequencies.asMap().keySet().removeIf(key -> key.siteId() == siteId || key.siteId() == ALL_SITES);
+        pagesCounts.asMap().keySet().removeIf(key -> key.siteId() == siteId || key.siteId() == ALL_SITES);
+    }
+
+    private record LemmaKey(int siteId, String lemma, long version) {
+    }
+
+    private record SiteKey(int siteId, long version) {
+    }
+}
@@ -0,0 +1,32 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search;
+
+import ru.vladimirsazonov.SiteSearchEngine.exceptions.RunApplicationException;
+
+/**
+ * {@code N}, {@code N%} rounded down or, if not set, all of the optional lemmas; never more than are left
+ * after the frequency cutoff, and at least one if the query has nothing required.
+ */
+public record MinShouldMatch(int value, boolean percent) {
+    public static final MinShouldMatch ALL = new MinShouldMatch(100, true);
+
+    public static MinShouldMatch of(String value) {
+        if (value == null || value.isBlank()) return ALL;
+        String number = value.strip();
+        boolean percent = number.endsWith("%");
+        if (percent) number = number.substring(0, number.length() - 1);
+        if (!number.isEmpty() && number.length() < 10 && number.chars().allMatch(Character::isDigit)) {
+            int parsed = Integer.parseInt(number);
+            if (!percent || parsed <= 100) return new MinShouldMatch(parsed, percent);
+        }
+        throw new RunApplicationException("Неверное значение minShouldMatch: " + value);
+    }
+
+    /**
+     * @param queryCount optional lemmas of the query
+     * @param leftCount  optional lemmas left after the frequency cutoff
+     */
+    int resolve(int queryCount, int leftCount, boolean nothingRequired) {
+        int count = percent ? queryCount * value / 100 : value;
+        return Math.min(Math.max(count, nothingRequired ? 1 : 0), leftCount);
+    }
+}
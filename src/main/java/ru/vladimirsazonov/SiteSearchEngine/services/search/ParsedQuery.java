@@ -0,0 +1,67 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search;
+
+import ru.vladimirsazonov.SiteSearchEngine.services.morphology.MorphologyService;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Phrase;
+
+import java.util.*;
+
+/**
+ * Lemmas are sorted and deduplicated, so equal queries written differently are equal.
+ */
+public record ParsedQuery(List<String> required, List<String> optional, List<String> excluded,
+                          List<Phrase> phrases) {
+
+    public static ParsedQuery parse(String query, MorphologyService morphologyService) {
+        StringBuilder plainText = new StringBuilder();
+        StringBuilder requiredText = new StringBuilder();
+        StringBuilder excludedText = new StringBuilder();
+        List<String> phraseTexts = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            if (Character.isWhitespace(query.charAt(i))) {
+                i++;
+                continue;
+            }
+            if (query.charAt(i) == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) end = query.length();
+                phraseTexts.add(query.substring(i + 1, end));
+                i = end + 1;
+                continue;
+            }
+            int end = i;
+            while (end < query.length() && !Character.isWhitespace(query.charAt(end))) end++;
+            String word = query.substring(i, end);
+            if (word.length() > 1 && word.charAt(0) == '+') append(requiredText, word.substring(1));
+            else if (word.length() > 1 && word.charAt(0) == '-') append(excludedText, word.substring(1));
+            else append(plainText, word);
+            i = end;
+        }
+        Set<String> required = new TreeSet<>(getLemmas(requiredText, morphologyService));
+        List<Phrase> phrases = new ArrayList<>();
+        for (String phraseText : phraseTexts) {
+            List<List<String>> words = new ArrayList<>();
+            morphologyService.forEachLemma(phraseText, (lemma, position) -> {
+                while (words.size() <= position) words.add(new ArrayList<>());
+                if (!words.get(position).contains(lemma)) words.get(position).add(lemma);
+                required.add(lemma);
+            });
+            while (!words.isEmpty() && words.get(words.size() - 1).isEmpty()) words.remove(words.size() - 1);
+            while (!words.isEmpty() && words.get(0).isEmpty()) words.remove(0);
+            if (words.stream().filter(lemmas -> !lemmas.isEmpty()).count() > 1) phrases.add(new Phrase(words));
+        }
+        Set<String> optional = new TreeSet<>(getLemmas(plainText, morphologyService));
+        optional.removeAll(required);
+        return new ParsedQuery(List.copyOf(required), List.copyOf(optional),
+                List.copyOf(new TreeSet<>(getLemmas(excludedText, morphologyService))), phrases);
+    }
+
+    private static void append(StringBuilder text, String word) {
+        if (!text.isEmpty()) text.append(' ');
+        text.append(word);
+    }
+
+    private static Set<String> getLemmas(StringBuilder text, MorphologyService morphologyService) {
+        return text.isEmpty() ? Set.of() : morphologyService.getLemmasSet(text.toString());
+    }
+}
@@ -0,0 +1,15 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search;
+
+import ru.vladimirsazonov.SiteSearchEngine.exceptions.RunApplicationException;
+
+public enum Ranking {
+    RELEVANCE, TF_IDF, BM25;
+
+    public static Ranking of(String name) {
+        if (name == null || name.isBlank()) return RELEVANCE;
+        for (Ranking ranking : values()) {
+            if (ranking.name().equalsIgnoreCase(name.replace('-', '_'))) return ranking;
+        }
+        throw new RunApplicationException("Неизвестный способ ранжирования: " + name);
+    }
+}
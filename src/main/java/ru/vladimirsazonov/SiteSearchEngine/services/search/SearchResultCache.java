@@ -0,0 +1,73 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import ru.vladimirsazonov.SiteSearchEngine.config.SearchSettings;
+import ru.vladimirsazonov.SiteSearchEngine.dto.SearchResultResponse;
+
+import java.util.List;
+
+/**
+ * Keys are versioned by {@link SiteVersions}.
+ */
+@Component
+public class SearchResultCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int RESULT_OVERHEAD_BYTES = 96;
+
+    private final Cache<Key, SearchResultResponse> responses;
+    private final SiteVersions versions = new SiteVersions();
+    private final int maxEntryBytes;
+
+    public SearchResultCache(SearchSettings searchSettings, MeterRegistry meterRegistry) {
+        maxEntryBytes = searchSettings.getResultCacheMaxEntryBytes();
+        responses = Caffeine.newBuilder()
+                .maximumWeight(searchSettings.getResultCacheMaxBytes())
+                .weigher((Key key, SearchResultResponse response) -> weigh(key, response))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, responses, "search.results");
+    }
+
+    public Key key(ParsedQuery query, MinShouldMatch minShouldMatch, int siteId, int offset, int limit,
+                   Ranking ranking) {
+        return new Key(query, minShouldMatch, siteId, offset, limit, ranking, versions.current(siteId));
+    }
+
+    public SearchResultResponse get(Key key) {
+        return responses.getIfPresent(key);
+    }
+
+    public void put(Key key, SearchResultResponse response) {
+        if (weigh(key, response) <= maxEntryBytes) responses.put(key, response);
+    }
+
+    public void invalidateSite(int siteId) {
+        versions.bump(siteId);
+        responses.asMap().keySet().removeIf(key -> key.siteId() == siteId
+                || key.siteId() == LemmaStatistics.ALL_SITES);
+    }
+
+    private static int weigh(Key key, SearchResultResponse response) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        ParsedQuery query = key.query();
+        for (List<String> lemmas : List.of(query.required(), query.optional(), query.excluded()))
+            for (String lemma : lemmas) bytes += 2L * lemma.length();
+        for (SearchResultResponse.SearchResult result : response.getData()) {
+            bytes += RESULT_OVERHEAD_BYTES + 2L * (length(result.site()) + length(result.siteName())
+                    + length(result.uri()) + length(result.title()) + length(result.snippet()));
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    public record Key(ParsedQuery query, MinShouldMatch minShouldMatch, int siteId, int offset, int limit,
+                      Ranking ranking, long version) {
+    }
+}
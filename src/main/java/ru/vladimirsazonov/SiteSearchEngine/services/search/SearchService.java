@@ -3,6 +3,7 @@ package ru.vladimirsazonov.SiteSearchEngine.services.search;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchEngineResponse;
 
 public interface SearchService {
-    SearchEngineResponse startSearch(String query, String site, int offset, int limit);
+    SearchEngineResponse startSearch(String query, String site, int offset, int limit, String ranking,
+                                     String minShouldMatch);
 
 }
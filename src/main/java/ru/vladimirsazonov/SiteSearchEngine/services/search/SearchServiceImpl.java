@@ -1,21 +1,24 @@
 package ru.vladimirsazonov.SiteSearchEngine.services.search;
 
 import lombok.RequiredArgsConstructor;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
+import ru.vladimirsazonov.SiteSearchEngine.config.SearchSettings;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchEngineResponse;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchResultResponse;
 import ru.vladimirsazonov.SiteSearchEngine.exceptions.RunApplicationException;
-import ru.vladimirsazonov.SiteSearchEngine.model.Page;
+import ru.vladimirsazonov.SiteSearchEngine.model.PageText;
 import ru.vladimirsazonov.SiteSearchEngine.model.Site;
-import ru.vladimirsazonov.SiteSearchEngine.model.Status;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
 import ru.vladimirsazonov.SiteSearchEngine.services.morphology.MorphologyService;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.InvertedIndex;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.PageHits;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Scorer;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopHits;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopKHeap;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopKQuery;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.snippet.SnippetGenerator;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,135 +26,165 @@ import java.util.stream.Collectors;
 public class SearchServiceImpl implements SearchService {
     private final MorphologyService morphologyService;
     private final DAO dao;
+    private final LemmaStatistics lemmaStatistics;
+    private final SearchSettings searchSettings;
+    private final SearchResultCache searchResultCache;
+    private final InvertedIndex invertedIndex;
 
     @Override
-    public SearchEngineResponse startSearch(String query, String siteUrl, int offset, int limit) {
+    public SearchEngineResponse startSearch(String query, String siteUrl, int offset, int limit, String ranking,
+                                            String minShouldMatch) {
         if (query == null || query.isBlank()) throw new RunApplicationException("Задан пустой поисковый запрос");
-        if (siteUrl == null && dao.findAllSites().stream().noneMatch(site -> site.getStatus() == Status.INDEXED))
-            throw new RunApplicationException("Сайты ещё не проиндексированы");
-        if (siteUrl != null) {
-            Site site = dao.findSiteByUrl(siteUrl);
-            if (site == null) throw new RunApplicationException("Данный сайт не указан в конфигурационном файле");
-            if (site.getStatus() != Status.INDEXED)
-                throw new RunApplicationException("Сайт ещё не проиндексирован");
+        Ranking queryRanking = Ranking.of(ranking);
+        MinShouldMatch queryMinShouldMatch = MinShouldMatch.of(minShouldMatch);
+        List<Site> sites = getSitesForSearch(siteUrl);
+        int siteId = siteUrl == null ? LemmaStatistics.ALL_SITES : sites.get(0).getId();
+        ParsedQuery parsedQuery = ParsedQuery.parse(query, morphologyService);
+        offset = Math.max(offset, 0);
+        limit = Math.max(limit, 0);
+        SearchResultCache.Key key = searchResultCache.key(parsedQuery, queryMinShouldMatch, siteId, offset, limit,
+                queryRanking);
+        SearchResultResponse response = searchResultCache.get(key);
+        if (response == null) {
+            response = search(parsedQuery, queryMinShouldMatch, queryRanking, sites, siteId, offset, limit);
+            searchResultCache.put(key, response);
         }
-        List<String> lemmas = getLemmas(query, siteUrl);
-        List<Page> pages = getSearchResultPages(lemmas, siteUrl, limit);
-        if (pages.isEmpty()) return new SearchResultResponse(0, new SearchResultResponse.SearchResult[0]);
-        SearchResultResponse.SearchResult[] data = getDataArray(getPagesAndRelevanceMap(pages, lemmas), lemmas);
-        return new SearchResultResponse(data.length, data);
+        return response;
     }
 
-    private SearchResultResponse.SearchResult[] getDataArray(Map<Page, Float> pagesAndRelevanceMap, List<String> lemmas) {
-        return pagesAndRelevanceMap.entrySet().stream()
-                .map(entry -> getSearchResult(entry.getKey(), entry.getValue(), lemmas))
-                .sorted(Comparator.reverseOrder())
-                .toArray(SearchResultResponse.SearchResult[]::new);
+    /**
+     * Required lemmas are all kept, optional ones go through the frequency cutoff. If all the optional lemmas
+     * left have to match, they are searched as required ones.
+     */
+    private SearchResultResponse search(ParsedQuery parsedQuery, MinShouldMatch minShouldMatch, Ranking ranking,
+                                        List<Site> sites, int siteId, int offset, int limit) {
+        List<Map.Entry<String, Integer>> required = getLemmas(parsedQuery.required(), siteId);
+        List<Map.Entry<String, Integer>> optional = dropTooCommon(getLemmas(parsedQuery.optional(), siteId), siteId,
+                required.isEmpty());
+        int shouldMatch = minShouldMatch.resolve(parsedQuery.optional().size(), optional.size(), required.isEmpty());
+        if (shouldMatch == optional.size()) {
+            required = concat(required, optional);
+            optional = List.of();
+            shouldMatch = 0;
+        }
+        if (required.isEmpty() && optional.isEmpty())
+            return new SearchResultResponse(0, new SearchResultResponse.SearchResult[0]);
+        TopKHeap topPages = new TopKHeap((int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+        TopKQuery query = new TopKQuery(keys(required), keys(optional), shouldMatch, parsedQuery.excluded(),
+                parsedQuery.phrases(), getScorer(ranking, concat(required, optional), siteId), topPages.capacity(),
+                searchSettings.getExactCountThreshold());
+        int count = 0;
+        float maxScore = 0;
+        for (Site site : sites) {
+            TopHits hits = getTopHits(site, query);
+            for (int i = 0; i < hits.pages().size(); i++) {
+                float score = hits.pages().scores()[i];
+                topPages.offer(hits.pages().pageIds()[i], score);
+                maxScore = Math.max(maxScore, score);
+            }
+            count += hits.totalHits();
+        }
+        SnippetGenerator snippetGenerator = new SnippetGenerator(query.lemmas().stream()
+                .map(this::getWordForms)
+                .toList());
+        Map<Integer, Site> sitesById = sites.stream().collect(Collectors.toMap(Site::getId, site -> site));
+        return new SearchResultResponse(count,
+                getDataArray(topPages.drainDescending(), offset, maxScore, sitesById, snippetGenerator));
+    }
+
+    private List<Site> getSitesForSearch(String siteUrl) {
+        if (siteUrl == null) {
+            List<Site> sites = dao.findAllSites().stream()
+                    .filter(Site::isSearchable)
+                    .toList();
+            if (sites.isEmpty()) throw new RunApplicationException("Сайты ещё не проиндексированы");
+            return sites;
+        }
+        Site site = dao.findSiteByUrl(siteUrl);
+        if (site == null) throw new RunApplicationException("Данный сайт не указан в конфигурационном файле");
+        if (!site.isSearchable())
+            throw new RunApplicationException("Сайт ещё не проиндексирован");
+        return List.of(site);
     }
 
-    private SearchResultResponse.SearchResult getSearchResult(Page page, float relevance, List<String> lemmas) {
-        Site site = page.getSite();
-        Document document = Jsoup.parse(page.getContent());
-        String snippet = getSnippet(document.text(), lemmas);
-        return new SearchResultResponse.SearchResult(site.getUrl(), site.getName(), page.getPath(),
-                document.title(), snippet, relevance);
+    private SearchResultResponse.SearchResult[] getDataArray(PageHits topPages, int offset, float maxScore,
+                                                           Map<Integer, Site> sitesById,
+                                                           SnippetGenerator snippetGenerator) {
+        if (offset >= topPages.size()) return new SearchResultResponse.SearchResult[0];
+        List<Integer> pageIds = new ArrayList<>(topPages.size() - offset);
+        for (int i = offset; i < topPages.size(); i++) pageIds.add(topPages.pageIds()[i]);
+        Map<Integer, PageText> pages = dao.findPageTextsByIds(pageIds).stream()
+                .collect(Collectors.toMap(PageText::id, page -> page));
+        List<SearchResultResponse.SearchResult> data = new ArrayList<>(pageIds.size());
+        for (int i = offset; i < topPages.size(); i++) {
+            PageText page = pages.get(topPages.pageIds()[i]);
+            if (page == null) continue;
+            float score = topPages.scores()[i];
+            data.add(getSearchResult(page, sitesById.get(page.siteId()), maxScore > 0 ? score / maxScore : 0,
+                    snippetGenerator));
+        }
+        return data.toArray(SearchResultResponse.SearchResult[]::new);
     }
 
-    private List<String> getLemmas(String query, String site) {
-        return morphologyService.getLemmasSet(query)
-                .stream()
-                .map(lemma -> Map.entry(lemma,
-                        site == null ? dao.getTotalFrequencyForLemma(lemma)
-                                : dao.getFrequencyForLemmaBySite(lemma, site)))
+    private SearchResultResponse.SearchResult getSearchResult(PageText page, Site site, float relevance,
+                                                              SnippetGenerator snippetGenerator) {
+        String snippet = snippetGenerator.generate(page.text() == null ? "" : page.text());
+        return new SearchResultResponse.SearchResult(site.getUrl(), site.getName(), page.path(),
+                page.title(), snippet, relevance);
+    }
+
+    private List<Map.Entry<String, Integer>> getLemmas(List<String> queryLemmas, int siteId) {
+        return queryLemmas.stream()
+                .map(lemma -> Map.entry(lemma, lemmaStatistics.getFrequency(siteId, lemma)))
                 .sorted(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
                 .toList();
     }
 
-    private List<Page> getSearchResultPages(List<String> lemmas, String site, int limit) {
-        if (lemmas.isEmpty()) return List.of();
-        String lemma = lemmas.get(0);
-        List<Page> pages = getPages(lemma, site);
-        lemmas.stream()
-                .skip(1L)
-                .map(l -> getPages(l, site))
-                .forEach(pages::retainAll);
-        return pages.stream().limit(limit).toList();
+    private List<Map.Entry<String, Integer>> dropTooCommon(List<Map.Entry<String, Integer>> lemmas, int siteId,
+                                                           boolean keepRarest) {
+        long maxFrequency = getMaxLemmaFrequency(siteId);
+        List<Map.Entry<String, Integer>> result = new ArrayList<>(lemmas.size());
+        for (Map.Entry<String, Integer> lemma : lemmas) {
+            if ((!keepRarest || !result.isEmpty()) && lemma.getValue() > maxFrequency) break;
+            result.add(lemma);
+        }
+        return result;
     }
 
-    private List<Page> getPages(String lemma, String site) {
-        return site == null ? dao.findPagesByLemma(lemma)
-                : dao.findPagesByLemmaAndSiteUrl(lemma, site);
+    private static List<String> keys(List<Map.Entry<String, Integer>> lemmas) {
+        return lemmas.stream().map(Map.Entry::getKey).toList();
     }
 
-    private Map<Page, Float> getPagesAndRelevanceMap(List<Page> pages, List<String> lemmas) {
-        Map<Page, Float> pagesAndRelevanceMap = pages.stream()
-                .collect(Collectors.toMap(page -> page,
-                        page -> dao.getGradeSumByPageIdAndLemmas(page.getId(), lemmas)));
-        float maxAbsRel = pagesAndRelevanceMap.values().stream()
-                .max(Float::compareTo)
-                .get();
-        pagesAndRelevanceMap.forEach((page, rel) -> pagesAndRelevanceMap.replace(page, rel / maxAbsRel));
-        return pagesAndRelevanceMap;
+    private static List<Map.Entry<String, Integer>> concat(List<Map.Entry<String, Integer>> first,
+                                                           List<Map.Entry<String, Integer>> second) {
+        List<Map.Entry<String, Integer>> result = new ArrayList<>(first);
+        result.addAll(second);
+        return result;
     }
 
-    private String getSnippet(String text, List<String> lemmas) {
-        StringBuilder builder = new StringBuilder();
-        List<String> fragments = new ArrayList<>();
-        Set<String> totalWordFormsForHandle = new HashSet<>();
-        for (String lemma : lemmas) {
-            Set<String> wordForms = morphologyService.getLemmasWordForms(lemma);
-            totalWordFormsForHandle.addAll(wordForms);
-            fragments.add(getTextFragment(text, wordForms));
-        }
-        fragments.sort((s1, s2) -> s2.length() - s1.length());
-        for (int i = fragments.size() - 1; i > 0; i--)
-            for (int j = i - 1; j >= 0; j--)
-                if (fragments.get(j).contains(fragments.get(i))) fragments.remove(i--);
-        fragments.forEach(fragment -> builder.append(handleFragment(fragment, totalWordFormsForHandle)).append("... "));
-        return builder.deleteCharAt(builder.length() - 1).toString();
+    private Scorer getScorer(Ranking ranking, List<Map.Entry<String, Integer>> lemmas, int siteId) {
+        if (ranking == Ranking.RELEVANCE) return Scorer.GRADE_SUM;
+        int pagesCount = lemmaStatistics.getPagesCount(siteId);
+        float[] idfs = new float[lemmas.size()];
+        for (int i = 0; i < idfs.length; i++) idfs[i] = Scorer.idf(lemmas.get(i).getValue(), pagesCount);
+        return ranking == Ranking.BM25 ? Scorer.bm25(idfs) : Scorer.tfIdf(idfs);
     }
 
-    private String getTextFragment(String text, Set<String> lemmas) {
-        for (String lemma : lemmas) {
-            Matcher matcher = Pattern.compile("(?i)(?u)" + lemma).matcher(text);
-            int index, start, end;
-            int length = text.length();
-            while (matcher.find()) {
-                start = matcher.start();
-                end = matcher.end();
-                if (isAPartOfWord(start, end, text)) continue;
-                if (start <= 20 || (index = text.lastIndexOf(" ", start - 20)) == -1) start = 0;
-                else start = ++index;
-                if (length < end + 20 || (index = text.indexOf(" ", end + 20)) == -1) end = length;
-                else end = index;
-                return text.substring(start, end);
-            }
-        }
-        return "";
+    private long getMaxLemmaFrequency(int siteId) {
+        if (searchSettings.getMaxLemmaFrequencyPercent() >= 100) return Long.MAX_VALUE;
+        int pagesCount = lemmaStatistics.getPagesCount(siteId);
+        if (pagesCount < searchSettings.getFrequencyCutoffMinPages()) return Long.MAX_VALUE;
+        return (long) pagesCount * searchSettings.getMaxLemmaFrequencyPercent() / 100;
     }
 
-    private boolean isAPartOfWord(int start, int end, String text) {
-        return end < text.length() && Character.isAlphabetic(text.charAt(end)) ||
-                start != 0 && Character.isAlphabetic(text.charAt(start - 1));
+    private Set<String> getWordForms(String lemma) {
+        Set<String> wordForms = new HashSet<>(morphologyService.getLemmasWordForms(lemma));
+        wordForms.add(lemma);
+        return wordForms;
     }
 
-    private String handleFragment(String fragment, Set<String> lemmas) {
-        StringBuilder builder = new StringBuilder(fragment);
-        char firstMatchedFragmentChar;
-        for (String lemma : lemmas) {
-            char firstLemmaChar = lemma.charAt(0);
-            Matcher matcher = Pattern.compile("(?i)(?u)" + lemma).matcher(builder);
-            while (matcher.find()) {
-                int start = matcher.start();
-                int end = matcher.end();
-                if (isAPartOfWord(start, end, builder.toString())) continue;
-                firstMatchedFragmentChar = builder.charAt(start);
-                builder.replace(start, end, "<b>" + lemma + "</b>");
-                if (firstMatchedFragmentChar != firstLemmaChar)
-                    builder.replace(start + 3, start + 4, String.valueOf(firstMatchedFragmentChar));
-            }
-        }
-        return builder.toString();
+    private TopHits getTopHits(Site site, TopKQuery query) {
+        invertedIndex.loadSiteIfAbsent(site.getId(), site.getActiveGeneration());
+        return invertedIndex.search(site.getId(), query);
     }
 }
@@ -0,0 +1,27 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions of the cached data of every site and of the all-sites totals. A cache key carries the version
+ * of its site read before its value is computed, so a value computed against the previous index and put
+ * after {@link #bump(int)} lands under a key no one looks up any more.
+ */
+class SiteVersions {
+    private final Map<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    long current(int siteId) {
+        return version(siteId).get();
+    }
+
+    void bump(int siteId) {
+        version(siteId).incrementAndGet();
+        version(LemmaStatistics.ALL_SITES).incrementAndGet();
+    }
+
+    private AtomicLong version(int siteId) {
+        return versions.computeIfAbsent(siteId, id -> new AtomicLong());
+    }
+}
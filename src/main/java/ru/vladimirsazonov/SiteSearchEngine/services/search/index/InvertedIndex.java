@@ -0,0 +1,74 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.Site;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class InvertedIndex {
+    private final Map<Integer, SiteSegment> segments = new ConcurrentHashMap<>();
+    private final DAO dao;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndexedSites() {
+        dao.findAllSites().stream()
+                .filter(Site::isSearchable)
+                .forEach(site -> loadSite(site.getId(), site.getActiveGeneration()));
+    }
+
+    /**
+     * Builds the segment of the given site generation and swaps it in place of the one being served.
+     */
+    public void loadSite(int siteId, int generation) {
+        segments.put(siteId, build(siteId, generation));
+    }
+
+    /**
+     * Builds the segment of the given site generation unless the site is loaded already. A segment
+     * swapped in by indexing while this one is built is kept, being of the newer generation.
+     */
+    public void loadSiteIfAbsent(int siteId, int generation) {
+        if (!isLoaded(siteId)) segments.putIfAbsent(siteId, build(siteId, generation));
+    }
+
+    private SiteSegment build(int siteId, int generation) {
+        LocalTime start = LocalTime.now();
+        Map<Integer, String> lemmasById = new HashMap<>();
+        for (Lemma lemma : dao.findLemmasBySiteId(siteId)) lemmasById.put(lemma.getId(), lemma.getLemma());
+        SiteSegment.Builder builder = new SiteSegment.Builder(siteId, lemmasById,
+                dao.findPageLengths(siteId, generation));
+        dao.forEachIndexEntryBySiteId(siteId, generation, entry ->
+                builder.add(entry.lemmaId(), entry.pageId(), entry.grade(), entry.positions()));
+        SiteSegment segment = builder.build();
+        log.info("Site %d generation %d loaded into inverted index: %d lemmas, %d bytes, %d ms".formatted(
+                siteId, generation, segment.getLemmasCount(), segment.getSizeInBytes(),
+                Duration.between(start, LocalTime.now()).toMillis()));
+        return segment;
+    }
+
+    public void removeSite(int siteId) {
+        segments.remove(siteId);
+    }
+
+    public boolean isLoaded(int siteId) {
+        return segments.containsKey(siteId);
+    }
+
+    public TopHits search(int siteId, TopKQuery query) {
+        SiteSegment segment = segments.get(siteId);
+        return segment == null ? TopHits.EMPTY : segment.search(query);
+    }
+}
@@ -0,0 +1,31 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import java.util.Arrays;
+
+public record PageHits(int[] pageIds, float[] scores, int size) {
+    public static final PageHits EMPTY = new PageHits(new int[0], new float[0], 0);
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public static class Builder {
+        private int[] pageIds = new int[16];
+        private float[] scores = new float[16];
+        private int size;
+
+        public Builder add(int pageId, float score) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            pageIds[size] = pageId;
+            scores[size++] = score;
+            return this;
+        }
+
+        public PageHits build() {
+            return size == 0 ? EMPTY : new PageHits(pageIds, scores, size);
+        }
+    }
+}
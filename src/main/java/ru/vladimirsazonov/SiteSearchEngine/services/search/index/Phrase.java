@@ -0,0 +1,9 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import java.util.List;
+
+/**
+ * A word without lemmas, a stop word, only keeps the distance between its neighbours.
+ */
+public record Phrase(List<List<String>> words) {
+}
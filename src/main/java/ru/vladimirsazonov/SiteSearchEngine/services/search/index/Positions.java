@@ -0,0 +1,57 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import java.util.Arrays;
+
+public final class Positions {
+    private static final int[] EMPTY = new int[0];
+
+    private Positions() {
+    }
+
+    static int[] decode(byte[] data, int from, int to) {
+        if (from == to) return EMPTY;
+        int[] positions = new int[to - from];
+        int count = 0;
+        int position = 0;
+        int offset = from;
+        while (offset < to) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            positions[count++] = position += delta;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    public static class Builder {
+        private byte[] data = new byte[8];
+        private int length;
+        private int last = -1;
+
+        /**
+         * Positions are added in ascending order, a repeated one is ignored.
+         */
+        public Builder add(int position) {
+            if (position < last) throw new IllegalArgumentException("Positions must be added in ascending order");
+            if (position == last) return this;
+            int value = last < 0 ? position : position - last;
+            if (length + 5 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+            last = position;
+            return this;
+        }
+
+        public byte[] build() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+}
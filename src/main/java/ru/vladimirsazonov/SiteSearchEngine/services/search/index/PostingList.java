@@ -0,0 +1,209 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Page ids in blocks of {@value BLOCK_SIZE} varint-encoded deltas, with a skip table of the first ids
+ * and the maximum grade of every block as its score upper bound.
+ */
+public class PostingList {
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    static final int BLOCK_SIZE = 64;
+
+    @Getter
+    private final int lemmaId;
+    @Getter
+    private final int size;
+    @Getter
+    private final float maxGrade;
+    private final byte[] deltas;
+    private final int[] blockFirstDocs;
+    private final int[] blockOffsets;
+    private final float[] blockMaxGrades;
+    private final float[] grades;
+    private final byte[] positions;
+    private final int[] positionOffsets;
+
+    private PostingList(int lemmaId, int size, byte[] deltas, int[] blockFirstDocs, int[] blockOffsets,
+                        float[] blockMaxGrades, float[] grades, byte[] positions, int[] positionOffsets) {
+        this.lemmaId = lemmaId;
+        this.size = size;
+        this.deltas = deltas;
+        this.blockFirstDocs = blockFirstDocs;
+        this.blockOffsets = blockOffsets;
+        this.blockMaxGrades = blockMaxGrades;
+        this.grades = grades;
+        this.positions = positions;
+        this.positionOffsets = positionOffsets;
+        float max = 0;
+        for (float blockMaxGrade : blockMaxGrades) max = Math.max(max, blockMaxGrade);
+        maxGrade = max;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public long getSizeInBytes() {
+        return deltas.length + positions.length + 4L * (blockFirstDocs.length + blockOffsets.length
+                + blockMaxGrades.length + grades.length + positionOffsets.length);
+    }
+
+    public class Cursor {
+        private int index = -1;
+        private int block = -1;
+        private int offset;
+        private int doc = -1;
+
+        public int docId() {
+            return doc;
+        }
+
+        public float grade() {
+            return grades[index];
+        }
+
+        public float blockMaxGrade() {
+            return blockMaxGrades[block];
+        }
+
+        public int[] positions() {
+            return Positions.decode(positions, positionOffsets[index], positionOffsets[index + 1]);
+        }
+
+        public int nextDoc() {
+            if (++index >= size) {
+                index = size;
+                return doc = NO_MORE_DOCS;
+            }
+            if (index % BLOCK_SIZE == 0) return enterBlock(index / BLOCK_SIZE);
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = deltas[offset++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return doc += delta;
+        }
+
+        public int advance(int target) {
+            if (doc >= target) return doc;
+            int targetBlock = findBlock(target);
+            if (targetBlock > block) {
+                index = targetBlock * BLOCK_SIZE;
+                enterBlock(targetBlock);
+            }
+            while (doc < target) nextDoc();
+            return doc;
+        }
+
+        public int nextBlock() {
+            if (block + 1 >= blockFirstDocs.length) {
+                index = size;
+                return doc = NO_MORE_DOCS;
+            }
+            index = (block + 1) * BLOCK_SIZE;
+            return enterBlock(block + 1);
+        }
+
+        private int enterBlock(int newBlock) {
+            block = newBlock;
+            offset = blockOffsets[newBlock];
+            return doc = blockFirstDocs[newBlock];
+        }
+
+        private int findBlock(int target) {
+            int low = Math.max(block, 0);
+            int step = 1;
+            while (low + step < blockFirstDocs.length && blockFirstDocs[low + step] <= target) {
+                low += step;
+                step <<= 1;
+            }
+            int high = Math.min(low + step, blockFirstDocs.length);
+            int found = Arrays.binarySearch(blockFirstDocs, low, high, target);
+            return found >= 0 ? found : Math.max(-found - 2, low);
+        }
+    }
+
+    public static class Builder {
+        @Getter
+        private final int lemmaId;
+        private byte[] deltas = new byte[16];
+        private int[] blockFirstDocs = new int[1];
+        private int[] blockOffsets = new int[1];
+        private float[] blockMaxGrades = new float[1];
+        private float[] grades = new float[BLOCK_SIZE];
+        private byte[] positions = new byte[16];
+        private int[] positionOffsets = new int[BLOCK_SIZE + 1];
+        private int positionsLength;
+        private int size;
+        private int length;
+        private int lastDoc = -1;
+
+        public Builder(int lemmaId) {
+            this.lemmaId = lemmaId;
+        }
+
+        public Builder add(int docId, float grade) {
+            return add(docId, grade, null);
+        }
+
+        /**
+         * @param docPositions word positions encoded by {@link Positions.Builder}, {@code null} if not recorded
+         */
+        public Builder add(int docId, float grade, byte[] docPositions) {
+            if (docId <= lastDoc)
+                throw new IllegalArgumentException("Page ids must be added in ascending order");
+            if (size == grades.length) grades = Arrays.copyOf(grades, size * 2);
+            grades[size] = grade;
+            if (size + 1 == positionOffsets.length) positionOffsets = Arrays.copyOf(positionOffsets, size * 2 + 1);
+            if (docPositions != null) {
+                if (positionsLength + docPositions.length > positions.length)
+                    positions = Arrays.copyOf(positions, Math.max(positions.length * 2,
+                            positionsLength + docPositions.length));
+                System.arraycopy(docPositions, 0, positions, positionsLength, docPositions.length);
+                positionsLength += docPositions.length;
+            }
+            positionOffsets[size + 1] = positionsLength;
+            int block = size / BLOCK_SIZE;
+            if (size % BLOCK_SIZE == 0) {
+                if (block == blockFirstDocs.length) {
+                    blockFirstDocs = Arrays.copyOf(blockFirstDocs, block * 2);
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                    blockMaxGrades = Arrays.copyOf(blockMaxGrades, block * 2);
+                }
+                blockFirstDocs[block] = docId;
+                blockOffsets[block] = length;
+            } else writeVarInt(docId - lastDoc);
+            blockMaxGrades[block] = Math.max(blockMaxGrades[block], grade);
+            lastDoc = docId;
+            size++;
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public PostingList build() {
+            int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new PostingList(lemmaId, size, Arrays.copyOf(deltas, length),
+                    Arrays.copyOf(blockFirstDocs, blocks), Arrays.copyOf(blockOffsets, blocks),
+                    Arrays.copyOf(blockMaxGrades, blocks), Arrays.copyOf(grades, size),
+                    Arrays.copyOf(positions, positionsLength), Arrays.copyOf(positionOffsets, size + 1));
+        }
+
+        private void writeVarInt(int value) {
+            if (length + 5 > deltas.length) deltas = Arrays.copyOf(deltas, Math.max(deltas.length * 2, length + 5));
+            while ((value & ~0x7F) != 0) {
+                deltas[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            deltas[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+/**
+ * Scores must not decrease with the grade nor increase with the length norm, float rounding included:
+ * top-K evaluation prunes pages by the score of the maximum grade at the least length norm.
+ */
+@FunctionalInterface
+public interface Scorer {
+    float K1 = 1.2f;
+    float B = 0.75f;
+    Scorer GRADE_SUM = (lemma, grade, lengthNorm) -> grade;
+
+    float score(int lemma, float grade, float lengthNorm);
+
+    static Scorer tfIdf(float[] idfs) {
+        return (lemma, grade, lengthNorm) -> idfs[lemma] * grade;
+    }
+
+    static Scorer bm25(float[] idfs) {
+        return (lemma, grade, lengthNorm) -> idfs[lemma] * (K1 + 1) / (1 + lengthNorm / grade);
+    }
+
+    static float idf(int frequency, int pagesCount) {
+        return (float) Math.log(1 + (pagesCount - frequency + 0.5) / (frequency + 0.5));
+    }
+
+    static float lengthNorm(int tokenCount, float averageTokenCount) {
+        return averageTokenCount == 0 ? K1 : K1 * (1 - B + B * tokenCount / averageTokenCount);
+    }
+}
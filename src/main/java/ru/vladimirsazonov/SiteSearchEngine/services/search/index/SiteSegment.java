@@ -0,0 +1,158 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import ru.vladimirsazonov.SiteSearchEngine.model.PageLength;
+
+import java.util.*;
+
+/**
+ * If all the optional lemmas present in the site have to match, they are evaluated as required ones.
+ */
+public class SiteSegment {
+    @Getter
+    private final int siteId;
+    private final Map<String, Integer> lemmaIds;
+    private final Map<Integer, PostingList> postings;
+    private final int[] pageIds;
+    private final float[] lengthNorms;
+    @Getter(AccessLevel.PACKAGE)
+    private final float minLengthNorm;
+
+    SiteSegment(int siteId, Map<String, Integer> lemmaIds, Map<Integer, PostingList> postings,
+                int[] pageIds, float[] lengthNorms) {
+        this.siteId = siteId;
+        this.lemmaIds = lemmaIds;
+        this.postings = postings;
+        this.pageIds = pageIds;
+        this.lengthNorms = lengthNorms;
+        float min = Scorer.K1;
+        for (float lengthNorm : lengthNorms) min = Math.min(min, lengthNorm);
+        minLengthNorm = min;
+    }
+
+    public PostingList getPostingList(String lemma) {
+        Integer lemmaId = lemmaIds.get(lemma);
+        return lemmaId == null ? null : postings.get(lemmaId);
+    }
+
+    public int getLemmasCount() {
+        return postings.size();
+    }
+
+    public long getSizeInBytes() {
+        return postings.values().stream().mapToLong(PostingList::getSizeInBytes).sum()
+                + 8L * pageIds.length;
+    }
+
+    public TopHits search(TopKQuery query) {
+        List<String> lemmas = query.lemmas();
+        List<TopKEvaluator.Term> required = new ArrayList<>();
+        List<TopKEvaluator.Term> optional = new ArrayList<>();
+        for (int position = 0; position < lemmas.size(); position++) {
+            PostingList list = getPostingList(lemmas.get(position));
+            boolean isRequired = position < query.required().size();
+            if (list == null) {
+                if (isRequired) return TopHits.EMPTY;
+                continue;
+            }
+            float maxScore = query.scorer().score(position, list.getMaxGrade(), minLengthNorm);
+            (isRequired ? required : optional).add(new TopKEvaluator.Term(lemmas.get(position), list, position,
+                    maxScore));
+        }
+        int minShouldMatch = required.isEmpty() ? Math.max(query.minShouldMatch(), 1) : query.minShouldMatch();
+        if (optional.size() < minShouldMatch) return TopHits.EMPTY;
+        if (minShouldMatch == optional.size()) {
+            required.addAll(optional);
+            optional.clear();
+            minShouldMatch = 0;
+        }
+        required.sort(Comparator.comparingInt(term -> term.list().getSize()));
+        optional.sort(Comparator.comparingDouble(TopKEvaluator.Term::maxScore));
+        List<PostingList> excluded = query.excluded().stream()
+                .map(this::getPostingList)
+                .filter(Objects::nonNull)
+                .toList();
+        TopKEvaluator evaluator = new TopKEvaluator(this, required, optional, minShouldMatch, excluded,
+                getPhraseTerms(query.phrases(), required), query);
+        return required.isEmpty() ? evaluator.matchAny() : evaluator.matchAll();
+    }
+
+    private static List<TopKEvaluator.PhraseTerms> getPhraseTerms(List<Phrase> phrases,
+                                                                  List<TopKEvaluator.Term> required) {
+        Map<String, Integer> requiredIndexes = new HashMap<>();
+        for (int i = 0; i < required.size(); i++) requiredIndexes.put(required.get(i).lemma(), i);
+        List<TopKEvaluator.PhraseTerms> phraseTerms = new ArrayList<>(phrases.size());
+        for (Phrase phrase : phrases) {
+            int[] terms = new int[phrase.words().size()];
+            int[] offsets = new int[terms.length];
+            int count = 0;
+            for (int word = 0; word < terms.length; word++) {
+                if (phrase.words().get(word).isEmpty()) continue;
+                Integer index = requiredIndexes.get(phrase.words().get(word).get(0));
+                if (index == null) throw new IllegalArgumentException("Phrase lemmas must be required");
+                terms[count] = index;
+                offsets[count++] = word;
+            }
+            if (count < 2) continue;
+            for (int i = count - 1; i >= 0; i--) offsets[i] -= offsets[0];
+            phraseTerms.add(new TopKEvaluator.PhraseTerms(Arrays.copyOf(terms, count), Arrays.copyOf(offsets, count)));
+        }
+        return phraseTerms;
+    }
+
+    float getLengthNorm(int pageId) {
+        int index = Arrays.binarySearch(pageIds, pageId);
+        return index >= 0 ? lengthNorms[index] : Scorer.K1;
+    }
+
+    static class Builder {
+        private final int siteId;
+        private final Map<String, Integer> lemmaIds = new HashMap<>();
+        private final Map<Integer, PostingList> postings = new HashMap<>();
+        private final Map<Integer, String> lemmasById;
+        private final int[] pageIds;
+        private final float[] lengthNorms;
+        private PostingList.Builder current;
+
+        Builder(int siteId, Map<Integer, String> lemmasById, List<PageLength> pageLengths) {
+            this.siteId = siteId;
+            this.lemmasById = lemmasById;
+            PageLength[] sorted = pageLengths.stream()
+                    .sorted(Comparator.comparingInt(PageLength::pageId))
+                    .toArray(PageLength[]::new);
+            float averageTokenCount = (float) pageLengths.stream()
+                    .mapToInt(PageLength::tokenCount)
+                    .average()
+                    .orElse(0);
+            pageIds = new int[sorted.length];
+            lengthNorms = new float[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                pageIds[i] = sorted[i].pageId();
+                lengthNorms[i] = Scorer.lengthNorm(sorted[i].tokenCount(), averageTokenCount);
+            }
+        }
+
+        void add(int lemmaId, int pageId, float grade, byte[] positions) {
+            if (current != null && current.getLemmaId() != lemmaId) flush();
+            if (current == null) current = new PostingList.Builder(lemmaId);
+            current.add(pageId, grade, positions);
+        }
+
+        SiteSegment build() {
+            flush();
+            return new SiteSegment(siteId, lemmaIds, postings, pageIds, lengthNorms);
+        }
+
+        private void flush() {
+            if (current == null || current.isEmpty()) return;
+            int lemmaId = current.getLemmaId();
+            String lemma = lemmasById.get(lemmaId);
+            if (lemma != null) {
+                lemmaIds.put(lemma, lemmaId);
+                postings.put(lemmaId, current.build());
+            }
+            current = null;
+        }
+    }
+}
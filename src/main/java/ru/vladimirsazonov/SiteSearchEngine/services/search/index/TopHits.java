@@ -0,0 +1,5 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+public record TopHits(PageHits pages, int totalHits) {
+    public static final TopHits EMPTY = new TopHits(PageHits.EMPTY, 0);
+}
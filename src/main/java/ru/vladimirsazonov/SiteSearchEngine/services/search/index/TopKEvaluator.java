@@ -0,0 +1,212 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates a query over posting list cursors keeping the best {@code k} pages, skipping pages whose score
+ * upper bound can not beat the heap once {@code exactCountThreshold} pages are matched. Scores and bounds
+ * are summed in cursor order whatever is pruned, so a page scores bit for bit as in an exhaustive evaluation.
+ */
+final class TopKEvaluator {
+    private final PostingList.Cursor[] cursors;
+    private final int[] positions;
+    private final float[] maxScores;
+    private final int requiredCount;
+    private final int minShouldMatch;
+    private final PostingList.Cursor[] excluded;
+    private final List<PhraseTerms> phrases;
+    private final float minLengthNorm;
+    private final SiteSegment segment;
+    private final Scorer scorer;
+    private final TopKHeap heap;
+    private final int exactCountThreshold;
+    private int totalHits;
+
+    /**
+     * @param required required lemmas ordered by the list size, phrases refer to them by index
+     * @param optional optional lemmas ordered by the upper bound of their scores
+     */
+    TopKEvaluator(SiteSegment segment, List<Term> required, List<Term> optional, int minShouldMatch,
+                  List<PostingList> excluded, List<PhraseTerms> phrases, TopKQuery query) {
+        this.segment = segment;
+        int count = required.size() + optional.size();
+        cursors = new PostingList.Cursor[count];
+        positions = new int[count];
+        maxScores = new float[count];
+        for (int i = 0; i < count; i++) {
+            Term term = i < required.size() ? required.get(i) : optional.get(i - required.size());
+            cursors[i] = term.list().cursor();
+            positions[i] = term.position();
+            maxScores[i] = term.maxScore();
+        }
+        requiredCount = required.size();
+        this.minShouldMatch = minShouldMatch;
+        this.excluded = excluded.stream().map(PostingList::cursor).toArray(PostingList.Cursor[]::new);
+        this.phrases = phrases;
+        minLengthNorm = segment.getMinLengthNorm();
+        scorer = query.scorer();
+        heap = new TopKHeap(query.k());
+        exactCountThreshold = query.exactCountThreshold();
+    }
+
+    TopHits matchAll() {
+        PostingList.Cursor lead = cursors[0];
+        float[] grades = new float[cursors.length];
+        float maxScore = upperBound(maxScores[0]);
+        int doc = lead.nextDoc();
+        candidates:
+        while (doc != PostingList.NO_MORE_DOCS) {
+            boolean pruning = isPruning();
+            float minScore = heap.minScore();
+            if (pruning) {
+                if (maxScore <= minScore) break;
+                if (upperBound(scorer.score(positions[0], lead.blockMaxGrade(), minLengthNorm)) <= minScore) {
+                    doc = lead.nextBlock();
+                    continue;
+                }
+                if (upperBound(scorer.score(positions[0], lead.grade(), minLengthNorm)) <= minScore) {
+                    doc = lead.nextDoc();
+                    continue;
+                }
+            }
+            grades[0] = lead.grade();
+            for (int i = 1; i < requiredCount; i++) {
+                int other = cursors[i].advance(doc);
+                if (other != doc) {
+                    doc = lead.advance(other);
+                    continue candidates;
+                }
+                grades[i] = cursors[i].grade();
+            }
+            int matched = 0;
+            for (int i = requiredCount; i < cursors.length; i++) {
+                boolean found = cursors[i].advance(doc) == doc;
+                grades[i] = found ? cursors[i].grade() : 0;
+                if (found) matched++;
+            }
+            if (matched >= minShouldMatch && !isExcluded(doc)) {
+                if (pruning && score(grades, minLengthNorm) <= minScore) {
+                    if (phrases.isEmpty()) totalHits++;
+                } else if (containsPhrases()) collect(doc, score(grades, segment.getLengthNorm(doc)));
+            }
+            doc = lead.nextDoc();
+        }
+        return new TopHits(heap.drainDescending(), totalHits);
+    }
+
+    TopHits matchAny() {
+        float[] boundSums = new float[cursors.length];
+        for (int i = 0; i < cursors.length; i++) {
+            boundSums[i] = (i == 0 ? 0 : boundSums[i - 1]) + maxScores[i];
+            cursors[i].nextDoc();
+        }
+        float[] scores = new float[cursors.length];
+        int firstEssential = 0;
+        while (true) {
+            if (isPruning()) {
+                float minScore = heap.minScore();
+                while (firstEssential < cursors.length && boundSums[firstEssential] <= minScore) firstEssential++;
+            }
+            if (firstEssential == cursors.length) break;
+            int doc = PostingList.NO_MORE_DOCS;
+            for (int i = firstEssential; i < cursors.length; i++) doc = Math.min(doc, cursors[i].docId());
+            if (doc == PostingList.NO_MORE_DOCS) break;
+            float lengthNorm = segment.getLengthNorm(doc);
+            Arrays.fill(scores, 0);
+            int matched = 0;
+            for (int i = firstEssential; i < cursors.length; i++) {
+                if (cursors[i].docId() != doc) continue;
+                scores[i] = scorer.score(positions[i], cursors[i].grade(), lengthNorm);
+                matched++;
+                cursors[i].nextDoc();
+            }
+            boolean competitive = true;
+            for (int i = firstEssential - 1; i >= 0 && competitive; i--) {
+                competitive = upperBound(scores, i) > heap.minScore();
+                if (competitive && cursors[i].advance(doc) == doc) {
+                    scores[i] = scorer.score(positions[i], cursors[i].grade(), lengthNorm);
+                    matched++;
+                }
+            }
+            if (matched < minShouldMatch || isExcluded(doc)) continue;
+            if (competitive) collect(doc, sum(scores));
+            else totalHits++;
+        }
+        return new TopHits(heap.drainDescending(), totalHits);
+    }
+
+    private boolean isExcluded(int doc) {
+        for (PostingList.Cursor cursor : excluded)
+            if (cursor.advance(doc) == doc) return true;
+        return false;
+    }
+
+    private boolean containsPhrases() {
+        for (PhraseTerms phrase : phrases) {
+            int[][] wordPositions = new int[phrase.terms().length][];
+            for (int i = 0; i < wordPositions.length; i++) wordPositions[i] = cursors[phrase.terms()[i]].positions();
+            boolean found = false;
+            for (int start : wordPositions[0]) {
+                found = true;
+                for (int i = 1; i < wordPositions.length && found; i++)
+                    found = Arrays.binarySearch(wordPositions[i], start + phrase.offsets()[i]) >= 0;
+                if (found) break;
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Upper bound of the score of a page whose lists up to {@code lastUnscored} are not evaluated yet.
+     */
+    private float upperBound(float[] scores, int lastUnscored) {
+        float bound = 0;
+        for (int i = 0; i < scores.length; i++) bound += i <= lastUnscored ? maxScores[i] : scores[i];
+        return bound;
+    }
+
+    /**
+     * Sums the scores of the lemmas found on a page, a zero grade stands for a missing optional lemma.
+     */
+    private float score(float[] grades, float lengthNorm) {
+        float score = 0;
+        for (int i = 0; i < grades.length; i++)
+            if (grades[i] != 0) score += scorer.score(positions[i], grades[i], lengthNorm);
+        return score;
+    }
+
+    private static float sum(float[] scores) {
+        float sum = 0;
+        for (float score : scores) sum += score;
+        return sum;
+    }
+
+    /**
+     * Upper bound of a page score given the bound for the lead lemma, summed in the order the scores are.
+     */
+    private float upperBound(float leadScore) {
+        float bound = leadScore;
+        for (int i = 1; i < maxScores.length; i++) bound += maxScores[i];
+        return bound;
+    }
+
+    private boolean isPruning() {
+        return totalHits >= exactCountThreshold && heap.capacity() > 0 && heap.size() == heap.capacity();
+    }
+
+    private void collect(int doc, float score) {
+        totalHits++;
+        heap.offer(doc, score);
+    }
+
+    record Term(String lemma, PostingList list, int position, float maxScore) {
+    }
+
+    /**
+     * Phrase words with lemmas as indexes of the required cursors and their offsets from the first word.
+     */
+    record PhraseTerms(int[] terms, int[] offsets) {
+    }
+}
@@ -0,0 +1,93 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+/**
+ * Ties are broken by the lower page id, so that result pages are stable between requests.
+ */
+public class TopKHeap {
+    private final int[] pageIds;
+    private final float[] scores;
+    private int size;
+
+    public TopKHeap(int k) {
+        pageIds = new int[Math.max(k, 0)];
+        scores = new float[Math.max(k, 0)];
+    }
+
+    public void offer(int pageId, float score) {
+        if (pageIds.length == 0) return;
+        if (size < pageIds.length) {
+            pageIds[size] = pageId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (isBetter(pageId, score, 0)) {
+            pageIds[0] = pageId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public int capacity() {
+        return pageIds.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float minScore() {
+        return size < pageIds.length || size == 0 ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public PageHits drainDescending() {
+        int count = size;
+        int[] sortedIds = new int[count];
+        float[] sortedScores = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            sortedIds[i] = pageIds[0];
+            sortedScores[i] = scores[0];
+            size--;
+            if (size > 0) {
+                move(size, 0);
+                siftDown(0);
+            }
+        }
+        return count == 0 ? PageHits.EMPTY : new PageHits(sortedIds, sortedScores, count);
+    }
+
+    private boolean isBetter(int pageId, float score, int index) {
+        return score > scores[index] || score == scores[index] && pageId < pageIds[index];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isBetter(pageIds[parent], scores[parent], index)) break;
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) return;
+            if (child + 1 < size && isBetter(pageIds[child], scores[child], child + 1)) child++;
+            if (!isBetter(pageIds[index], scores[index], child)) return;
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private void move(int from, int to) {
+        pageIds[to] = pageIds[from];
+        scores[to] = scores[from];
+    }
+
+    private void swap(int i, int j) {
+        int pageId = pageIds[i];
+        float score = scores[i];
+        move(j, i);
+        pageIds[j] = pageId;
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,27 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.index;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Phrase lemmas have to be among the required ones. Matches are counted exactly up to
+ * {@code exactCountThreshold}, past it the count is a lower bound.
+ */
+public record TopKQuery(List<String> required, List<String> optional, int minShouldMatch, List<String> excluded,
+                        List<Phrase> phrases, Scorer scorer, int k, int exactCountThreshold) {
+
+    public static TopKQuery allOf(List<String> lemmas, Scorer scorer, int k, int exactCountThreshold) {
+        return new TopKQuery(lemmas, List.of(), 0, List.of(), List.of(), scorer, k, exactCountThreshold);
+    }
+
+    public static TopKQuery anyOf(List<String> lemmas, Scorer scorer, int k, int exactCountThreshold) {
+        return new TopKQuery(List.of(), lemmas, 1, List.of(), List.of(), scorer, k, exactCountThreshold);
+    }
+
+    /**
+     * The required lemmas followed by the optional ones, indexed as the scorer gets them.
+     */
+    public List<String> lemmas() {
+        return Stream.concat(required.stream(), optional.stream()).toList();
+    }
+}
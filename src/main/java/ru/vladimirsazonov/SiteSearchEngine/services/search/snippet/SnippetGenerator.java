@@ -0,0 +1,95 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.snippet;
+
+import ru.vladimirsazonov.SiteSearchEngine.services.morphology.CyrillicTokenizer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class SnippetGenerator {
+    private static final int WINDOW_LENGTH = 160;
+    private static final int CONTEXT_LENGTH = 40;
+
+    private final WordFormMatcher matcher;
+    private final int lemmasCount;
+
+    public SnippetGenerator(List<Set<String>> wordFormsByLemma) {
+        matcher = new WordFormMatcher(wordFormsByLemma);
+        lemmasCount = wordFormsByLemma.size();
+    }
+
+    public String generate(String text) {
+        Matches matches = new Matches();
+        CyrillicTokenizer.tokenize(text, (buffer, length, start) -> {
+            int lemmaIndex = matcher.match(buffer, length);
+            if (lemmaIndex != WordFormMatcher.NO_MATCH) matches.add(start, start + length, lemmaIndex);
+        });
+        if (matches.size == 0) return getTextStart(text);
+
+        int[] lemmaCounts = new int[lemmasCount];
+        int distinct = 0;
+        int bestFirst = 0;
+        int bestLast = 0;
+        long bestScore = -1;
+        for (int first = 0, last = 0; last < matches.size; last++) {
+            if (lemmaCounts[matches.lemmas[last]]++ == 0) distinct++;
+            while (matches.ends[last] - matches.starts[first] > WINDOW_LENGTH)
+                if (--lemmaCounts[matches.lemmas[first++]] == 0) distinct--;
+            long score = (long) distinct << 32 | last - first + 1;
+            if (score > bestScore) {
+                bestScore = score;
+                bestFirst = first;
+                bestLast = last;
+            }
+        }
+        return highlight(text, matches, bestFirst, bestLast);
+    }
+
+    private String highlight(String text, Matches matches, int first, int last) {
+        int from = Math.max(0, matches.starts[first] - CONTEXT_LENGTH);
+        int to = Math.min(text.length(), matches.ends[last] + CONTEXT_LENGTH);
+        if (from > 0) {
+            int space = text.indexOf(' ', from);
+            from = space == -1 || space >= matches.starts[first] ? matches.starts[first] : space + 1;
+        }
+        if (to < text.length()) {
+            int space = text.lastIndexOf(' ', to);
+            to = space <= matches.ends[last] ? matches.ends[last] : space;
+        }
+        StringBuilder builder = new StringBuilder(to - from + 16 * (last - first + 1));
+        if (from > 0) builder.append("...");
+        int position = from;
+        for (int i = first; i <= last; i++) {
+            builder.append(text, position, matches.starts[i])
+                    .append("<b>").append(text, matches.starts[i], matches.ends[i]).append("</b>");
+            position = matches.ends[i];
+        }
+        builder.append(text, position, to);
+        if (to < text.length()) builder.append("...");
+        return builder.toString();
+    }
+
+    private static String getTextStart(String text) {
+        if (text.length() <= WINDOW_LENGTH) return text;
+        int space = text.lastIndexOf(' ', WINDOW_LENGTH);
+        return text.substring(0, space > 0 ? space : WINDOW_LENGTH) + "...";
+    }
+
+    private static class Matches {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int[] lemmas = new int[16];
+        private int size;
+
+        private void add(int start, int end, int lemma) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                lemmas = Arrays.copyOf(lemmas, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            lemmas[size++] = lemma;
+        }
+    }
+}
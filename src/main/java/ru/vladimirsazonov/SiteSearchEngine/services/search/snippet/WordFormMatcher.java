@@ -0,0 +1,58 @@
+package ru.vladimirsazonov.SiteSearchEngine.services.search.snippet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+public class WordFormMatcher {
+    public static final int NO_MATCH = -1;
+    private static final int ALPHABET_SIZE = 33;
+
+    private int[] transitions = new int[ALPHABET_SIZE * 16];
+    private int[] lemmaIndexes = new int[16];
+    private int nodesCount = 1;
+
+    public WordFormMatcher(List<Set<String>> wordFormsByLemma) {
+        Arrays.fill(lemmaIndexes, NO_MATCH);
+        for (int lemmaIndex = 0; lemmaIndex < wordFormsByLemma.size(); lemmaIndex++)
+            for (String wordForm : wordFormsByLemma.get(lemmaIndex)) add(wordForm.toLowerCase(), lemmaIndex);
+    }
+
+    public int match(char[] buffer, int length) {
+        int node = 0;
+        for (int i = 0; i < length && node != NO_MATCH; i++) {
+            int letter = letterIndex(buffer[i]);
+            node = letter == NO_MATCH ? NO_MATCH : transitions[node * ALPHABET_SIZE + letter] - 1;
+        }
+        return node == NO_MATCH ? NO_MATCH : lemmaIndexes[node];
+    }
+
+    private void add(String wordForm, int lemmaIndex) {
+        int node = 0;
+        for (int i = 0; i < wordForm.length(); i++) {
+            int letter = letterIndex(wordForm.charAt(i));
+            if (letter == NO_MATCH) return;
+            int transition = node * ALPHABET_SIZE + letter;
+            if (transitions[transition] == 0) {
+                int child = newNode();
+                transitions[transition] = child + 1;
+            }
+            node = transitions[transition] - 1;
+        }
+        if (node != 0 && lemmaIndexes[node] == NO_MATCH) lemmaIndexes[node] = lemmaIndex;
+    }
+
+    private int newNode() {
+        if (nodesCount == lemmaIndexes.length) {
+            lemmaIndexes = Arrays.copyOf(lemmaIndexes, nodesCount * 2);
+            Arrays.fill(lemmaIndexes, nodesCount, lemmaIndexes.length, NO_MATCH);
+            transitions = Arrays.copyOf(transitions, nodesCount * 2 * ALPHABET_SIZE);
+        }
+        return nodesCount++;
+    }
+
+    private static int letterIndex(char c) {
+        if (c >= 'а' && c <= 'я') return c - 'а';
+        return c == 'ё' ? ALPHABET_SIZE - 1 : NO_MATCH;
+    }
+}
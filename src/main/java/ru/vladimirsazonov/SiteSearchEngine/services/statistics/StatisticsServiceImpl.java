@@ -1,26 +1,47 @@
 package ru.vladimirsazonov.SiteSearchEngine.services.statistics;
 
-import lombok.Data;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.vladimirsazonov.SiteSearchEngine.config.SitesList;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchEngineResponse;
 import ru.vladimirsazonov.SiteSearchEngine.dto.StatisticsResponse;
 import ru.vladimirsazonov.SiteSearchEngine.model.Site;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.IndexingService;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.CrawlMetrics;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
 
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.util.List;
 
 @Service
-@Data
+@RequiredArgsConstructor
 public class StatisticsServiceImpl implements StatisticsService {
+    private static final long SNAPSHOT_TTL_MILLIS = 1000;
+
     private final SitesList sites;
     private final DAO dao;
     private final IndexingService indexingService;
+    private final CrawlMetrics crawlMetrics;
+    private final Cache<Boolean, Snapshot> snapshot = Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofMillis(SNAPSHOT_TTL_MILLIS))
+            .build();
 
     @Override
     public SearchEngineResponse getStatistics() {
+        Snapshot current = snapshot.get(true, key -> takeSnapshot());
+        List<StatisticsResponse.SiteStatistics> detailed = current.detailed()
+                .stream()
+                .map(siteStatistics -> siteStatistics.withProgress(crawlMetrics.getProgress(siteStatistics.url())))
+                .toList();
+        return new StatisticsResponse(new StatisticsResponse.Statistics(
+                new StatisticsResponse.Total(detailed.size(), current.pages(), current.lemmas(),
+                        indexingService.isIndexingRunning()), detailed));
+    }
+
+    private Snapshot takeSnapshot() {
         List<Site> siteList = dao.findAllSites();
         if (siteList.isEmpty()) siteList = dao.saveSites(sites.getSites());
         List<StatisticsResponse.SiteStatistics> detailed = siteList
@@ -29,12 +50,12 @@ public class StatisticsServiceImpl implements StatisticsService {
                         site.getStatus() == null ? null : site.getStatus().name(),
                         site.getStatusTime() == null ? System.currentTimeMillis() :
                                 Timestamp.valueOf(site.getStatusTime()).getTime(),
-                        site.getLastError(),
-                        site.getPages() == null ? 0 : site.getPages().size(),
-                        site.getLemmas() == null ? 0 : site.getLemmas().size()))
+                        site.getLastError(), site.getPageCount(), site.getLemmaCount(), null))
                 .toList();
-        return new StatisticsResponse(new StatisticsResponse.Statistics(
-                new StatisticsResponse.Total(siteList.size(), dao.getPagesTotalCount(),
-                        dao.getLemmasTotalCount(), indexingService.isIndexingRunning()), detailed));
+        return new Snapshot(siteList.stream().mapToLong(Site::getPageCount).sum(),
+                siteList.stream().mapToLong(Site::getLemmaCount).sum(), detailed);
+    }
+
+    private record Snapshot(long pages, long lemmas, List<StatisticsResponse.SiteStatistics> detailed) {
     }
 }
@@ -0,0 +1,66 @@
+CREATE TABLE site (
+    id                INT          NOT NULL AUTO_INCREMENT,
+    active_generation INT          NOT NULL,
+    last_error        TEXT,
+    name              VARCHAR(255) NOT NULL,
+    status            VARCHAR(255),
+    status_time       DATETIME(6),
+    url               VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE page (
+    id                 INT          NOT NULL,
+    code               INT          NOT NULL,
+    content            MEDIUMTEXT   NOT NULL,
+    content_hash       BIGINT       NOT NULL,
+    etag               VARCHAR(255),
+    generation         INT          NOT NULL,
+    last_modified      VARCHAR(255),
+    path               TEXT         NOT NULL,
+    retired_generation INT          NOT NULL,
+    text               MEDIUMTEXT,
+    title              TEXT,
+    site_id            INT          NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_page_site FOREIGN KEY (site_id) REFERENCES site (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE lemma (
+    id        INT                                                 NOT NULL,
+    frequency INT                                                 NOT NULL,
+    lemma     VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
+    site_id   INT                                                 NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_lemma_site_id_lemma UNIQUE (site_id, lemma),
+    CONSTRAINT fk_lemma_site FOREIGN KEY (site_id) REFERENCES site (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE search_index (
+    id       INT   NOT NULL,
+    grade    FLOAT NOT NULL,
+    lemma_id INT,
+    page_id  INT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_search_index_lemma FOREIGN KEY (lemma_id) REFERENCES lemma (id),
+    CONSTRAINT fk_search_index_page FOREIGN KEY (page_id) REFERENCES page (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE field (
+    id       INT          NOT NULL AUTO_INCREMENT,
+    name     VARCHAR(255) NOT NULL,
+    selector VARCHAR(255) NOT NULL,
+    weight   FLOAT        NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE seq_page (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO seq_page VALUES (1);
+
+CREATE TABLE seq_lemma (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO seq_lemma VALUES (1);
+
+CREATE TABLE seq_index (next_val BIGINT) ENGINE = InnoDB;
+INSERT INTO seq_index VALUES (1);
+
+INSERT INTO field (name, selector, weight) VALUES ('title', 'title', 1.0), ('body', 'body', 0.8);
@@ -0,0 +1,7 @@
+-- path is TEXT, so only its prefix can be indexed; it is long enough to tell the paths of a site apart.
+-- The index also serves the site foreign key, whose implicit index the server drops by itself
+CREATE INDEX idx_page_site_id_path ON page (site_id, path(255));
+CREATE INDEX idx_page_site_id_retired_generation ON page (site_id, retired_generation);
+
+-- lemma frequency sums over all sites
+CREATE INDEX idx_lemma_lemma_frequency ON lemma (lemma, frequency);
@@ -0,0 +1,3 @@
+-- number of lemma tokens on a page, the document length for BM25 ranking;
+-- pages stored before it get their counts on the next reindex
+ALTER TABLE page ADD COLUMN token_count INT NOT NULL DEFAULT 0;
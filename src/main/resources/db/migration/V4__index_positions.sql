@@ -0,0 +1,3 @@
+-- word positions of a lemma on a page as varint-encoded deltas, used to verify quoted phrases;
+-- rows stored before it have none and match phrases only after the next reindex
+ALTER TABLE search_index ADD COLUMN positions BLOB;
@@ -0,0 +1,8 @@
+-- live pages and lemmas of the active generation of a site, recounted on every activation,
+-- so that statistics do not count them on each request
+ALTER TABLE site ADD COLUMN page_count INT NOT NULL DEFAULT 0, ADD COLUMN lemma_count INT NOT NULL DEFAULT 0;
+
+UPDATE site s SET
+    page_count = (SELECT COUNT(*) FROM page p WHERE p.site_id = s.id and p.generation <= s.active_generation
+        and (p.retired_generation = 0 or p.retired_generation > s.active_generation)),
+    lemma_count = (SELECT COUNT(*) FROM lemma l WHERE l.site_id = s.id and l.frequency > 0);
@@ -0,0 +1,15 @@
+-- last checkpoint of an unfinished crawl of a site, so that a new crawl of the same generation
+-- resumes it instead of starting over
+CREATE TABLE crawl_checkpoint (
+    site_id        INT         NOT NULL,
+    generation     INT         NOT NULL,
+    results_count  INT         NOT NULL,
+    failures_count INT         NOT NULL,
+    last_error     TEXT,
+    seen_paths     MEDIUMBLOB  NOT NULL,
+    visited_paths  MEDIUMBLOB  NOT NULL,
+    pending_urls   MEDIUMBLOB  NOT NULL,
+    saved_time     DATETIME(6) NOT NULL,
+    PRIMARY KEY (site_id),
+    CONSTRAINT fk_crawl_checkpoint_site FOREIGN KEY (site_id) REFERENCES site (id)
+) ENGINE = InnoDB;
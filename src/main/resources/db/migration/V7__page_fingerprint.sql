@@ -0,0 +1,2 @@
+-- SimHash of the weighted lemmas of a page, 0 for pages indexed before it was computed
+ALTER TABLE page ADD COLUMN fingerprint BIGINT NOT NULL DEFAULT 0;
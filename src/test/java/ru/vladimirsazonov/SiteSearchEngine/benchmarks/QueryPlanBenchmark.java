@@ -0,0 +1,181 @@
+package ru.vladimirsazonov.SiteSearchEngine.benchmarks;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.*;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the page and lemma lookups on a seeded site with the schema migrated up to {@code schemaVersion}:
+ * 1 is the schema without secondary indexes, 2 adds the search ones. The query plans are printed on setup.
+ * <p>
+ * Needs a MySQL or MariaDB server: the database from {@code BENCHMARK_DB_URL} (by default
+ * {@code search_engine_benchmark} on localhost, created if missing) is cleaned and seeded, the credentials
+ * are taken from {@code BENCHMARK_DB_USER} and {@code BENCHMARK_DB_PASSWORD}.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Dbenchmark=QueryPlanBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class QueryPlanBenchmark {
+    private static final String DB_URL = env("BENCHMARK_DB_URL",
+            "jdbc:mysql://localhost:3306/search_engine_benchmark?createDatabaseIfNotExist=true" +
+                    "&rewriteBatchedStatements=true");
+    private static final String DB_USER = env("BENCHMARK_DB_USER", "root");
+    private static final String DB_PASSWORD = env("BENCHMARK_DB_PASSWORD", "root");
+    private static final int PAGES_COUNT = 20_000;
+    private static final int VOCABULARY_SIZE = 20_000;
+    private static final int LEMMAS_PER_PAGE = 30;
+    private static final String PAGE_BY_PATH = "SELECT id FROM page WHERE site_id = ? and path = ? " +
+            "and retired_generation = 0";
+    private static final String LEMMA_FREQUENCY_SUM = "SELECT SUM(frequency) FROM lemma WHERE lemma = ?";
+
+    @Param({"1", "2"})
+    private String schemaVersion;
+
+    private Connection connection;
+    private PreparedStatement pageByPath;
+    private PreparedStatement lemmaFrequencySum;
+    private Random random;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Flyway flyway = Flyway.configure()
+                .dataSource(DB_URL, DB_USER, DB_PASSWORD)
+                .cleanDisabled(false)
+                .target(schemaVersion)
+                .load();
+        flyway.clean();
+        flyway.migrate();
+        connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+        seed();
+        pageByPath = connection.prepareStatement(PAGE_BY_PATH);
+        lemmaFrequencySum = connection.prepareStatement(LEMMA_FREQUENCY_SUM);
+        printPlan(PAGE_BY_PATH, 1, path(PAGES_COUNT / 2));
+        printPlan(LEMMA_FREQUENCY_SUM, lemma(10));
+        random = new Random(42);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int pageBySiteIdAndPath() throws SQLException {
+        pageByPath.setInt(1, 1);
+        pageByPath.setString(2, path(random.nextInt(PAGES_COUNT) + 1));
+        return consume(pageByPath);
+    }
+
+    @Benchmark
+    public int lemmaFrequencySum() throws SQLException {
+        lemmaFrequencySum.setString(1, lemma(random.nextInt(VOCABULARY_SIZE) + 1));
+        return consume(lemmaFrequencySum);
+    }
+
+    /**
+     * One site of {@code PAGES_COUNT} pages, lemma ids are skewed so that low ids are frequent ones.
+     */
+    private void seed() throws SQLException {
+        Random seedRandom = new Random(7);
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO site (id, active_generation, name, status, url) " +
+                    "VALUES (1, 1, 'Benchmark', 'INDEXED', 'http://localhost')");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO page (id, code, content, " +
+                "content_hash, generation, path, retired_generation, site_id) VALUES (?, 200, '', 0, 1, ?, 0, 1)")) {
+            for (int id = 1; id <= PAGES_COUNT; id++) {
+                insert.setInt(1, id);
+                insert.setString(2, path(id));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        int[][] pageLemmaIds = new int[PAGES_COUNT + 1][];
+        int[] frequencies = new int[VOCABULARY_SIZE + 1];
+        for (int pageId = 1; pageId <= PAGES_COUNT; pageId++) {
+            pageLemmaIds[pageId] = seedRandom.ints(1, VOCABULARY_SIZE + 1)
+                    .map(lemmaId -> (int) Math.max(1, (long) lemmaId * lemmaId / VOCABULARY_SIZE))
+                    .distinct()
+                    .limit(LEMMAS_PER_PAGE)
+                    .toArray();
+            for (int lemmaId : pageLemmaIds[pageId]) frequencies[lemmaId]++;
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO lemma (id, frequency, lemma, " +
+                "site_id) VALUES (?, ?, ?, 1)")) {
+            for (int lemmaId = 1; lemmaId <= VOCABULARY_SIZE; lemmaId++) {
+                insert.setInt(1, lemmaId);
+                insert.setInt(2, frequencies[lemmaId]);
+                insert.setString(3, lemma(lemmaId));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO search_index (id, grade, " +
+                "lemma_id, page_id) VALUES (?, ?, ?, ?)")) {
+            int id = 1;
+            for (int pageId = 1; pageId <= PAGES_COUNT; pageId++) {
+                for (int lemmaId : pageLemmaIds[pageId]) {
+                    insert.setInt(1, id++);
+                    insert.setFloat(2, 0.8f + seedRandom.nextInt(3) * 0.2f);
+                    insert.setInt(3, lemmaId);
+                    insert.setInt(4, pageId);
+                    insert.addBatch();
+                }
+                if (pageId % 1000 == 0) insert.executeBatch();
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE TABLE site, page, lemma, search_index");
+        }
+    }
+
+    private void printPlan(String query, Object... parameters) throws SQLException {
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query)) {
+            for (int i = 0; i < parameters.length; i++) explain.setObject(i + 1, parameters[i]);
+            try (ResultSet plan = explain.executeQuery()) {
+                System.out.println("schema v" + schemaVersion + ": " + query);
+                ResultSetMetaData metaData = plan.getMetaData();
+                while (plan.next()) {
+                    StringJoiner row = new StringJoiner(", ");
+                    for (int i = 1; i <= metaData.getColumnCount(); i++)
+                        row.add(metaData.getColumnLabel(i) + "=" + plan.getString(i));
+                    System.out.println(row);
+                }
+            }
+        }
+    }
+
+    private static int consume(PreparedStatement statement) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) rows++;
+        }
+        return rows;
+    }
+
+    private static String path(int pageId) {
+        return "/catalog/section-" + pageId % 50 + "/item-" + pageId + ".html";
+    }
+
+    private static String lemma(int lemmaId) {
+        return "лемма" + lemmaId;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null ? defaultValue : value;
+    }
+}
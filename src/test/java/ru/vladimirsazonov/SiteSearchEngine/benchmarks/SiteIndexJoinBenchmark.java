@@ -0,0 +1,100 @@
+package ru.vladimirsazonov.SiteSearchEngine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.Page;
+import ru.vladimirsazonov.SiteSearchEngine.model.Site;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.LinkHandleTaskResult;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.ObjectIntHashMap;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving one index row (page id + lemma id) for a site of {@code pagesCount} pages:
+ * the former stream scans over all site pages and lemmas against the id-keyed maps of SiteIndexWriter.
+ * Both variants join the same sample of crawl results, so the score is the time per index row.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Dbenchmark=SiteIndexJoinBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SiteIndexJoinBenchmark {
+    private static final int SAMPLE_SIZE = 1_000;
+    private static final int LEMMAS_PER_PAGE = 20;
+
+    @Param({"1000", "10000", "100000"})
+    private int pagesCount;
+
+    private List<Page> sitePages;
+    private List<Lemma> siteLemmas;
+    private List<LinkHandleTaskResult> sample;
+    private ObjectIntHashMap<String> pageIds;
+    private ObjectIntHashMap<String> lemmaIds;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Site site = new Site("Playback", "http://www.playback.ru");
+        int vocabularySize = Math.min(pagesCount * 2, 50_000);
+        sitePages = new ArrayList<>(pagesCount);
+        siteLemmas = new ArrayList<>(vocabularySize);
+        pageIds = new ObjectIntHashMap<>(pagesCount);
+        lemmaIds = new ObjectIntHashMap<>(vocabularySize);
+        for (int i = 1; i <= pagesCount; i++) {
+            Page page = new Page("/catalog/item-" + i + ".html", 200, "", site);
+            page.setId(i);
+            sitePages.add(page);
+            pageIds.put(page.getPath(), i);
+        }
+        for (int i = 1; i <= vocabularySize; i++) {
+            Lemma lemma = new Lemma("лемма" + i, 1, site);
+            lemma.setId(i);
+            siteLemmas.add(lemma);
+            lemmaIds.put(lemma.getLemma(), i);
+        }
+        sample = new ArrayList<>(SAMPLE_SIZE);
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            Page page = sitePages.get(random.nextInt(pagesCount));
+            Map<String, Float> lemmas = new HashMap<>();
+            while (lemmas.size() < LEMMAS_PER_PAGE)
+                lemmas.put(siteLemmas.get(random.nextInt(vocabularySize)).getLemma(), random.nextFloat());
+            LinkHandleTaskResult result = new LinkHandleTaskResult(page.getPath(), 200, 0, "");
+            result.setLemmasAndRanksMap(lemmas);
+            sample.add(result);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_SIZE * LEMMAS_PER_PAGE)
+    public void linearScanJoin(Blackhole blackhole) {
+        sample.forEach(taskResult -> {
+            Page page = sitePages.stream()
+                    .filter(p -> p.getPath().equals(taskResult.getPath()))
+                    .findFirst()
+                    .get();
+            taskResult.getLemmasAndRanksMap().forEach((lemma, rank) -> {
+                Lemma pageLemma = siteLemmas.stream()
+                        .filter(l -> l.getLemma().equals(lemma))
+                        .findFirst()
+                        .get();
+                blackhole.consume(page.getId() + pageLemma.getId() + rank);
+            });
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_SIZE * LEMMAS_PER_PAGE)
+    public void hashedJoin(Blackhole blackhole) {
+        for (LinkHandleTaskResult taskResult : sample) {
+            int pageId = pageIds.get(taskResult.getPath());
+            taskResult.getLemmasAndRanksMap().forEach((lemma, rank) ->
+                    blackhole.consume(pageId + lemmaIds.get(lemma) + rank));
+        }
+    }
+}
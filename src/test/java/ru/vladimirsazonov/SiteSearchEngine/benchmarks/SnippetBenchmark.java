@@ -0,0 +1,112 @@
+package ru.vladimirsazonov.SiteSearchEngine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.snippet.SnippetGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Snippet of one result for the query "леопард осетия": the former per word form regex matching
+ * of SearchServiceImpl against SnippetGenerator over the same plain page text.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Dbenchmark=SnippetBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SnippetBenchmark {
+    private static final List<Set<String>> WORD_FORMS = List.of(
+            Set.of("леопард", "леопарда", "леопарду", "леопардом", "леопарде", "леопарды", "леопардов",
+                    "леопардам", "леопардами", "леопардах"),
+            Set.of("осетия", "осетии", "осетию", "осетией"));
+
+    @Param({"2000", "64000"})
+    private int textSize;
+
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException {
+        String page;
+        try (InputStream in = getClass().getResourceAsStream("/benchmarks/page-body.txt")) {
+            page = new String(in.readAllBytes(), StandardCharsets.UTF_8).replace('\n', ' ');
+        }
+        StringBuilder builder = new StringBuilder(textSize + page.length());
+        while (builder.length() < textSize) builder.append(page);
+        text = builder.substring(0, textSize);
+    }
+
+    @Benchmark
+    public String regexSnippet() {
+        StringBuilder builder = new StringBuilder();
+        List<String> fragments = new ArrayList<>();
+        Set<String> totalWordForms = new HashSet<>();
+        for (Set<String> wordForms : WORD_FORMS) {
+            totalWordForms.addAll(wordForms);
+            fragments.add(getTextFragment(text, wordForms));
+        }
+        fragments.sort((s1, s2) -> s2.length() - s1.length());
+        for (int i = fragments.size() - 1; i > 0; i--)
+            for (int j = i - 1; j >= 0; j--)
+                if (fragments.get(j).contains(fragments.get(i))) fragments.remove(i--);
+        fragments.forEach(fragment -> builder.append(handleFragment(fragment, totalWordForms)).append("... "));
+        return builder.deleteCharAt(builder.length() - 1).toString();
+    }
+
+    @Benchmark
+    public String snippetGenerator() {
+        return new SnippetGenerator(WORD_FORMS).generate(text);
+    }
+
+    private String getTextFragment(String text, Set<String> lemmas) {
+        for (String lemma : lemmas) {
+            Matcher matcher = Pattern.compile("(?i)(?u)" + lemma).matcher(text);
+            int index, start, end;
+            int length = text.length();
+            while (matcher.find()) {
+                start = matcher.start();
+                end = matcher.end();
+                if (isAPartOfWord(start, end, text)) continue;
+                if (start <= 20 || (index = text.lastIndexOf(" ", start - 20)) == -1) start = 0;
+                else start = ++index;
+                if (length < end + 20 || (index = text.indexOf(" ", end + 20)) == -1) end = length;
+                else end = index;
+                return text.substring(start, end);
+            }
+        }
+        return "";
+    }
+
+    private boolean isAPartOfWord(int start, int end, String text) {
+        return end < text.length() && Character.isAlphabetic(text.charAt(end)) ||
+                start != 0 && Character.isAlphabetic(text.charAt(start - 1));
+    }
+
+    private String handleFragment(String fragment, Set<String> lemmas) {
+        StringBuilder builder = new StringBuilder(fragment);
+        char firstMatchedFragmentChar;
+        for (String lemma : lemmas) {
+            char firstLemmaChar = lemma.charAt(0);
+            Matcher matcher = Pattern.compile("(?i)(?u)" + lemma).matcher(builder);
+            while (matcher.find()) {
+                int start = matcher.start();
+                int end = matcher.end();
+                if (isAPartOfWord(start, end, builder.toString())) continue;
+                firstMatchedFragmentChar = builder.charAt(start);
+                builder.replace(start, end, "<b>" + lemma + "</b>");
+                if (firstMatchedFragmentChar != firstLemmaChar)
+                    builder.replace(start + 3, start + 4, String.valueOf(firstMatchedFragmentChar));
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package ru.vladimirsazonov.SiteSearchEngine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.vladimirsazonov.SiteSearchEngine.services.morphology.CyrillicTokenizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting a page body into lowercase words: the former regex split of MorphologyServiceImpl
+ * against CyrillicTokenizer. The body is a product page of a shop repeated up to {@code bodySize} chars.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Dbenchmark=TokenizerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class TokenizerBenchmark {
+
+    @Param({"2000", "64000"})
+    private int bodySize;
+
+    private String body;
+
+    @Setup
+    public void setUp() throws IOException {
+        String page;
+        try (InputStream in = getClass().getResourceAsStream("/benchmarks/page-body.txt")) {
+            page = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        StringBuilder builder = new StringBuilder(bodySize + page.length());
+        while (builder.length() < bodySize) builder.append(page);
+        body = builder.substring(0, bodySize);
+    }
+
+    @Benchmark
+    public void regexSplit(Blackhole blackhole) {
+        Arrays.stream(body.split("[^А-ЯЁа-яё]+"))
+                .filter(word -> !word.isBlank())
+                .map(String::toLowerCase)
+                .forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void cyrillicTokenizer(Blackhole blackhole) {
+        CyrillicTokenizer.tokenize(body, (buffer, length, start) -> blackhole.consume(buffer[length - 1]));
+    }
+}
@@ -0,0 +1,85 @@
+package ru.vladimirsazonov.SiteSearchEngine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.vladimirsazonov.SiteSearchEngine.model.IndexEntry;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.PageLength;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.InvertedIndex;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Scorer;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopHits;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopKQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Top 20 pages of a site of {@code PAGES_COUNT} pages for a query of a common lemma (found on half of
+ * the pages) and a very common one (on 90% of them), all-lemmas and any-lemma, scored by BM25:
+ * every match scored ({@code exactCountThreshold} is unlimited) against pruning past 1000 matches.
+ * <p>
+ * Run with {@code mvn -P benchmark test -Dbenchmark=TopKBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class TopKBenchmark {
+    private static final int PAGES_COUNT = 100_000;
+    private static final List<String> QUERY = List.of("леопард", "купить");
+
+    @Param({"1000", "2147483647"})
+    private int exactCountThreshold;
+
+    private InvertedIndex invertedIndex;
+    private Scorer scorer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Lemma common = new Lemma("леопард", 0, null);
+        common.setId(1);
+        Lemma veryCommon = new Lemma("купить", 0, null);
+        veryCommon.setId(2);
+        List<IndexEntry> entries = new ArrayList<>();
+        List<PageLength> pageLengths = new ArrayList<>(PAGES_COUNT);
+        for (int pageId = 1; pageId <= PAGES_COUNT; pageId++) {
+            if (random.nextInt(2) == 0) entries.add(new IndexEntry(1, pageId, 0.8f * (1 + random.nextInt(10)), null));
+            pageLengths.add(new PageLength(pageId, 100 + random.nextInt(2000)));
+        }
+        for (int pageId = 1; pageId <= PAGES_COUNT; pageId++) {
+            if (random.nextInt(10) != 0) entries.add(new IndexEntry(2, pageId, 0.8f * (1 + random.nextInt(3)), null));
+        }
+        DAO dao = mock(DAO.class);
+        doReturn(List.of(common, veryCommon)).when(dao).findLemmasBySiteId(1);
+        doReturn(pageLengths).when(dao).findPageLengths(1, 1);
+        doAnswer(invocation -> {
+            Consumer<IndexEntry> consumer = invocation.getArgument(2);
+            entries.forEach(consumer);
+            return null;
+        }).when(dao).forEachIndexEntryBySiteId(eq(1), eq(1), any());
+        invertedIndex = new InvertedIndex(dao);
+        invertedIndex.loadSite(1, 1);
+        scorer = Scorer.bm25(new float[]{Scorer.idf(PAGES_COUNT / 2, PAGES_COUNT),
+                Scorer.idf(PAGES_COUNT * 9 / 10, PAGES_COUNT)});
+    }
+
+    @Benchmark
+    public TopHits allLemmas() {
+        return invertedIndex.search(1, TopKQuery.allOf(QUERY, scorer, 20, exactCountThreshold));
+    }
+
+    @Benchmark
+    public TopHits anyLemma() {
+        return invertedIndex.search(1, TopKQuery.anyOf(QUERY, scorer, 20, exactCountThreshold));
+    }
+}
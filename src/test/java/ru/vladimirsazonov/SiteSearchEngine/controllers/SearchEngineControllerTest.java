@@ -69,8 +69,8 @@ class SearchEngineControllerTest {
 
     @Test
     void getSearchResultTest() {
-        when(searchService.startSearch("query", "site", 0, 20)).thenReturn(new SearchEngineResponse());
-        ResponseEntity<SearchEngineResponse> response = searchEngineController.getSearchResult("query", "site", 0, 20);
+        when(searchService.startSearch("query", "site", 0, 20, "bm25", "50%")).thenReturn(new SearchEngineResponse());
+        ResponseEntity<SearchEngineResponse> response = searchEngineController.getSearchResult("query", "site", 0, 20, "bm25", "50%");
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
@@ -0,0 +1,51 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.Site;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.BulkWriter;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkWriterTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    private BulkWriter bulkWriter;
+
+    @BeforeEach
+    void setUp() {
+        bulkWriter = new BulkWriter(jdbcTemplate, transactionManager);
+    }
+
+    @Test
+    void upsertLemmasTest_whenSequenceIsShared_thenTakeBlockAboveHibernateRange() {
+        Site site = new Site("Playback", "http://www.playback.ru");
+        List<Lemma> lemmas = List.of(new Lemma("леопард", 0, site), new Lemma("осетия", 0, site),
+                new Lemma("кавказ", 0, site));
+        doReturn(100).when(jdbcTemplate).queryForObject("SELECT next_val FROM seq_lemma FOR UPDATE", Integer.class);
+        bulkWriter.upsertLemmas(lemmas);
+
+        assertEquals(List.of(101, 102, 103), lemmas.stream().map(Lemma::getId).toList());
+        verify(jdbcTemplate).update("UPDATE seq_lemma SET next_val = ?", 153);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO lemma"), eq(lemmas), eq(1000), any());
+    }
+
+    @Test
+    void insertPagesTest_whenNothingToInsert_thenSkipAllocation() {
+        bulkWriter.insertPages(List.of());
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.Test;
+import ru.vladimirsazonov.SiteSearchEngine.services.morphology.CyrillicTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CyrillicTokenizerTest {
+
+    @Test
+    void tokenizeTest_whenTextIsMixed_thenEmitLowercaseCyrillicWordsWithOffsets() {
+        String text = "Ёжик,ЛЕОПАРД-123 iPhone  осетия";
+        List<String> words = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        CyrillicTokenizer.tokenize(text, (buffer, length, start) -> {
+            words.add(new String(buffer, 0, length));
+            starts.add(start);
+        });
+        assertEquals(List.of("ёжик", "леопард", "осетия"), words);
+        assertEquals(List.of(0, 5, text.indexOf("осетия")), starts);
+    }
+
+    @Test
+    void tokenizeTest_whenWordIsLongerThanBuffer_thenEmitWholeWord() {
+        String word = "а".repeat(1000);
+        List<String> words = new ArrayList<>();
+        CyrillicTokenizer.tokenize(" " + word.toUpperCase() + " ", (buffer, length, start) ->
+                words.add(new String(buffer, 0, length)));
+        assertEquals(List.of(word), words);
+    }
+}
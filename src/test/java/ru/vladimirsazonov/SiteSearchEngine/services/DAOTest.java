@@ -0,0 +1,72 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.LemmaId;
+import ru.vladimirsazonov.SiteSearchEngine.model.Site;
+import ru.vladimirsazonov.SiteSearchEngine.repositories.CrawlCheckpointRepository;
+import ru.vladimirsazonov.SiteSearchEngine.repositories.LemmaRepository;
+import ru.vladimirsazonov.SiteSearchEngine.repositories.PageRepository;
+import ru.vladimirsazonov.SiteSearchEngine.repositories.SearchIndexRepository;
+import ru.vladimirsazonov.SiteSearchEngine.repositories.SiteRepository;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.BulkWriter;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DAOTest {
+    @Mock
+    private PageRepository pageRepository;
+    @Mock
+    private LemmaRepository lemmaRepository;
+    @Mock
+    private SiteRepository siteRepository;
+    @Mock
+    private SearchIndexRepository searchIndexRepository;
+    @Mock
+    private CrawlCheckpointRepository crawlCheckpointRepository;
+    @Mock
+    private BulkWriter bulkWriter;
+    @InjectMocks
+    private DAO dao;
+    private final Site site = new Site("Playback", "http://www.playback.ru");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void saveLemmasTest_whenSomeLemmasAreStored_thenInsertOnlyMissingOnes() {
+        Lemma stored = new Lemma("леопард", 0, site);
+        Lemma missing = new Lemma("осетия", 0, site);
+        doReturn(List.of(new LemmaId(7, "леопард")))
+                .doReturn(List.of(new LemmaId(12, "осетия")))
+                .when(lemmaRepository).findIdsBySiteIdAndLemmas(eq(site.getId()), anyCollection());
+        dao.saveLemmas(List.of(stored, missing));
+
+        ArgumentCaptor<Collection<Lemma>> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(bulkWriter).upsertLemmas(inserted.capture());
+        assertEquals(List.of("осетия"), inserted.getValue().stream().map(Lemma::getLemma).toList());
+        assertEquals(7, stored.getId());
+        assertEquals(12, missing.getId());
+    }
+
+    @Test
+    void saveLemmasTest_whenAllLemmasAreStored_thenInsertNothing() {
+        Lemma stored = new Lemma("леопард", 0, site);
+        doReturn(List.of(new LemmaId(7, "леопард")))
+                .when(lemmaRepository).findIdsBySiteIdAndLemmas(site.getId(), List.of("леопард"));
+        dao.saveLemmas(List.of(stored));
+
+        verifyNoInteractions(bulkWriter);
+        assertEquals(7, stored.getId());
+    }
+}
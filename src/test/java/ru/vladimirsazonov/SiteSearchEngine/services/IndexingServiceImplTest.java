@@ -1,24 +1,35 @@
 package ru.vladimirsazonov.SiteSearchEngine.services;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.test.util.ReflectionTestUtils;
+import ru.vladimirsazonov.SiteSearchEngine.config.CrawlSettings;
 import ru.vladimirsazonov.SiteSearchEngine.config.SitesList;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchEngineResponse;
 import ru.vladimirsazonov.SiteSearchEngine.exceptions.RunApplicationException;
 import ru.vladimirsazonov.SiteSearchEngine.exceptions.ServerStateException;
 import ru.vladimirsazonov.SiteSearchEngine.model.Page;
 import ru.vladimirsazonov.SiteSearchEngine.model.Site;
+import ru.vladimirsazonov.SiteSearchEngine.model.Status;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.CrawlMetrics;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.IndexingServiceImpl;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.LemmaStatistics;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.SearchResultCache;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.InvertedIndex;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 
@@ -29,8 +40,18 @@ import static org.mockito.Mockito.*;
 class IndexingServiceImplTest {
     @Mock
     private SitesList sitesList;
+    @Spy
+    private CrawlSettings crawlSettings = new CrawlSettings();
     @Mock
     private DAO dao;
+    @Mock
+    private InvertedIndex invertedIndex;
+    @Mock
+    private LemmaStatistics lemmaStatistics;
+    @Mock
+    private SearchResultCache searchResultCache;
+    @Spy
+    private CrawlMetrics crawlMetrics = new CrawlMetrics(new SimpleMeterRegistry());
     @InjectMocks
     private IndexingServiceImpl indexingServiceImpl;
     List<Site> sites;
@@ -62,43 +83,90 @@ class IndexingServiceImplTest {
     }
 
     @Test
-    void startIndexingTest_whenIsSinglePageModeIsTrue_returnValidSearchEngineResponse() {
+    void indexPageTest_whenPageIsInIndex_returnValidSearchEngineResponse() {
         doReturn(sites).when(sitesList).getSites();
         Site site = sites.get(0);
-        ReflectionTestUtils.setField(indexingServiceImpl, "isSinglePageMode", true);
-        ReflectionTestUtils.setField(indexingServiceImpl, "urlForSinglePage", "http://www.playback.ru/dostavka.html");
         doReturn(new Page()).when(dao).findPageBySiteIdAndPath(site, "/dostavka.html");
-        lenient().doReturn(site).when(dao).updateSiteData(site.getUrl(), site.getName(), true);
+        lenient().doReturn(site).when(dao).updateSiteData(site.getUrl(), site.getName());
         lenient().doReturn(site).when(dao).findSiteById(0);
-        assertEquals(new SearchEngineResponse(), indexingServiceImpl.startIndexing());
+        assertEquals(new SearchEngineResponse(),
+                indexingServiceImpl.indexPage("http://www.playback.ru/dostavka.html"));
     }
 
     @Test
-    void startIndexingTest_whenIsSinglePageModeIsTrueAndPageIsNotInIndex_throwsException() {
+    void indexPageTest_whenPageIsNotInIndex_throwsException() {
         doReturn(sites).when(sitesList).getSites();
-        ReflectionTestUtils.setField(indexingServiceImpl, "isSinglePageMode", true);
-        ReflectionTestUtils.setField(indexingServiceImpl, "urlForSinglePage", "http://www.playback.ru/dostavka.html");
         doReturn(null).when(dao).findPageBySiteIdAndPath(sites.get(0), "/dostavka.html");
-        assertThrows(RunApplicationException.class,
-                () -> indexingServiceImpl.startIndexing(), "Указанная страница не найдена");
+        Exception exception = assertThrows(RunApplicationException.class,
+                () -> indexingServiceImpl.indexPage("http://www.playback.ru/dostavka.html"));
+        assertEquals("Указанная страница не найдена", exception.getMessage());
     }
 
     @Test
-    void startIndexingTest_whenIsSinglePageModeIsTrueAndSiteOptionalIsEmpty_throwsException() {
-        ReflectionTestUtils.setField(indexingServiceImpl, "isSinglePageMode", true);
-        ReflectionTestUtils.setField(indexingServiceImpl, "urlForSinglePage", "https://go.skillbox.ru/education");
-        assertThrows(RunApplicationException.class,
-                () -> indexingServiceImpl.startIndexing(), "Данная страница находится за пределами сайтов, " +
-                        "указанных в конфигурационном файле");
+    void indexPageTest_whenPageIsOutsideSites_throwsException() {
+        doReturn(sites).when(sitesList).getSites();
+        Exception exception = assertThrows(RunApplicationException.class,
+                () -> indexingServiceImpl.indexPage("https://go.skillbox.ru/education"));
+        assertEquals("Данная страница находится за пределами сайтов, указанных в конфигурационном файле",
+                exception.getMessage());
+    }
+
+    @Test
+    void indexPageTest_whenIndexingIsRunning_thenLeaveRunningCrawlFullSite() {
+        Site site = sites.get(0);
+        CountDownLatch rejected = new CountDownLatch(1);
+        doReturn(List.of(site)).when(sitesList).getSites();
+        doAnswer(invocation -> {
+            rejected.await();
+            return site;
+        }).when(dao).updateSiteData(site.getUrl(), site.getName());
+        crawlSettings.setMaxDepth(-1);
+        indexingServiceImpl.startIndexing();
+        assertThrows(ServerStateException.class,
+                () -> indexingServiceImpl.indexPage("http://www.playback.ru/dostavka.html"));
+        rejected.countDown();
+
+        verify(dao, timeout(5000)).setSiteStatus(Status.FAILED, site.getId());
+        verify(dao).findCheckpointBySiteId(site.getId());
+        verify(dao, never()).findPageBySiteIdAndPath(any(Site.class), anyString());
     }
 
     @Test
     void startIndexingTest_whenIsSinglePageModeIsFalse_returnValidSearchEngineResponse() {
         doReturn(sites).when(sitesList).getSites();
-        sites.forEach(s -> lenient().doReturn(s).when(dao).updateSiteData(s.getUrl(), s.getName(), false));
+        sites.forEach(s -> lenient().doReturn(s).when(dao).updateSiteData(s.getUrl(), s.getName()));
         assertEquals(new SearchEngineResponse(), indexingServiceImpl.startIndexing());
     }
 
+    @Test
+    void startIndexingTest_whenWriterFails_thenSetSiteFailedAndFinishIndexing() throws InterruptedException {
+        Site site = new Site("Local", "http://127.0.0.1:1");
+        doReturn(List.of(site)).when(sitesList).getSites();
+        doReturn(site).when(dao).updateSiteData(site.getUrl(), site.getName());
+        crawlSettings.setCheckpointInterval(Duration.ZERO);
+        doThrow(new DataAccessResourceFailureException("connection lost")).when(dao).saveCheckpoint(any());
+        indexingServiceImpl.startIndexing();
+
+        verify(dao, timeout(5000)).setSiteStatus(Status.FAILED, site.getId());
+        verify(dao).setSiteErrorMessage(eq(site.getId()), contains("connection lost"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (indexingServiceImpl.isIndexingRunning() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertFalse(indexingServiceImpl.isIndexingRunning());
+    }
+
+    @Test
+    void startIndexingTest_whenNothingIsFetched_thenSetSiteFailed() {
+        Site site = sites.get(0);
+        doReturn(List.of(site)).when(sitesList).getSites();
+        doReturn(site).when(dao).updateSiteData(site.getUrl(), site.getName());
+        crawlSettings.setMaxDepth(-1);
+        indexingServiceImpl.startIndexing();
+
+        verify(dao, timeout(5000)).setSiteStatus(Status.FAILED, site.getId());
+        verify(dao).setSiteErrorMessage(site.getId(), "Не получено ни одной страницы сайта");
+        verify(dao, never()).activateGeneration(anyInt(), anyInt());
+    }
+
     @Test
     void stopIndexingTest_whenIndexingRunningFlagIsFalse_throwsException() {
         assertThrows(ServerStateException.class,
@@ -122,7 +190,7 @@ class IndexingServiceImplTest {
         Site site = sites.get(0);
         doReturn(sites).when(sitesList).getSites();
         doReturn(new Page()).when(dao).findPageBySiteIdAndPath(any(Site.class), anyString());
-        lenient().doReturn(site).when(dao).updateSiteData(site.getUrl(), site.getName(), true);
+        lenient().doReturn(site).when(dao).updateSiteData(site.getUrl(), site.getName());
         assertEquals(new SearchEngineResponse(), indexingServiceImpl.indexPage(site.getUrl()));
     }
 
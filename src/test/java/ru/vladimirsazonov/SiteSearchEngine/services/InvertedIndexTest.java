@@ -0,0 +1,203 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.vladimirsazonov.SiteSearchEngine.model.IndexEntry;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.PageLength;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.InvertedIndex;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.PageHits;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Phrase;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Positions;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Scorer;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopHits;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopKQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InvertedIndexTest {
+    @Mock
+    private DAO dao;
+    @InjectMocks
+    private InvertedIndex invertedIndex;
+
+    @BeforeEach
+    void setUp() {
+        List<Lemma> lemmas = List.of(lemma(1, "леопард"), lemma(2, "осетия"), lemma(3, "кавказ"), lemma(4, "горы"));
+        List<IndexEntry> entries = new ArrayList<>();
+        IntStream.rangeClosed(1, 1000).forEach(pageId -> entries.add(new IndexEntry(1, pageId, 1f, positions(0))));
+        IntStream.rangeClosed(1, 1000).filter(pageId -> pageId % 3 == 0).forEach(pageId ->
+                entries.add(new IndexEntry(2, pageId, 2f, pageId % 2 == 0 ? positions(2, 7) : positions(1, 5))));
+        IntStream.rangeClosed(1, 1000).filter(pageId -> pageId % 7 == 0)
+                .forEach(pageId -> entries.add(new IndexEntry(3, pageId, 0.5f, null)));
+        IntStream.rangeClosed(1, 1000)
+                .forEach(pageId -> entries.add(new IndexEntry(4, pageId, pageId % 10 + 1, null)));
+        doReturn(lemmas).when(dao).findLemmasBySiteId(1);
+        doReturn(IntStream.rangeClosed(1, 1000)
+                .mapToObj(pageId -> new PageLength(pageId, pageId == 21 ? 10 : 100))
+                .toList()).when(dao).findPageLengths(1, 1);
+        doAnswer(invocation -> {
+            Consumer<IndexEntry> consumer = invocation.getArgument(2);
+            entries.forEach(consumer);
+            return null;
+        }).when(dao).forEachIndexEntryBySiteId(eq(1), eq(1), any());
+        invertedIndex.loadSite(1, 1);
+    }
+
+    @Test
+    void searchTest_whenAllLemmasArePresent_returnIntersectionWithGradeSums() {
+        PageHits hits = search(List.of("леопард", "осетия", "кавказ"), true, Scorer.GRADE_SUM).pages();
+        int[] expected = IntStream.rangeClosed(1, 1000).filter(pageId -> pageId % 21 == 0).toArray();
+        assertArrayEquals(expected, Arrays.copyOf(hits.pageIds(), hits.size()));
+        for (int i = 0; i < hits.size(); i++) assertEquals(3.5f, hits.scores()[i]);
+    }
+
+    @Test
+    void searchTest_whenRankedByBm25_thenShorterPageWithSameGradesScoresHigher() {
+        PageHits hits = search(List.of("осетия", "кавказ"), true, Scorer.bm25(new float[]{1f, 2f})).pages();
+        assertEquals(21, hits.pageIds()[0]);
+        assertEquals(42, hits.pageIds()[1]);
+        assertTrue(hits.scores()[0] > hits.scores()[1]);
+    }
+
+    @Test
+    void searchTest_whenScorerWeighsLemmas_thenPassQueryPositions() {
+        PageHits hits = search(List.of("леопард", "кавказ"), true, Scorer.tfIdf(new float[]{3f, 0f})).pages();
+        for (int i = 0; i < hits.size(); i++) assertEquals(3f, hits.scores()[i]);
+    }
+
+    @Test
+    void searchTest_whenSingleLemma_returnWholePostingList() {
+        PageHits hits = search(List.of("кавказ"), true, Scorer.GRADE_SUM).pages();
+        int[] expected = IntStream.rangeClosed(1, 1000).filter(pageId -> pageId % 7 == 0).toArray();
+        assertArrayEquals(expected, Arrays.copyOf(hits.pageIds(), hits.size()));
+    }
+
+    @Test
+    void searchTest_whenLemmaIsMissing_returnEmptyHits() {
+        assertTrue(search(List.of("леопард", "район"), true, Scorer.GRADE_SUM).pages().isEmpty());
+    }
+
+    @Test
+    void searchTest_whenSiteIsNotLoaded_returnEmptyHits() {
+        assertFalse(invertedIndex.isLoaded(2));
+        assertTrue(invertedIndex.search(2, TopKQuery.allOf(List.of("леопард"), Scorer.GRADE_SUM, 20, 1000))
+                .pages().isEmpty());
+    }
+
+    @Test
+    void loadSiteIfAbsentTest_whenSiteIsLoaded_thenKeepLoadedSegment() {
+        invertedIndex.loadSiteIfAbsent(1, 2);
+        verify(dao, times(1)).findLemmasBySiteId(1);
+        assertFalse(search(List.of("кавказ"), true, Scorer.GRADE_SUM).pages().isEmpty());
+    }
+
+    @Test
+    void searchTest_whenAnyLemmaMatches_returnUnion() {
+        TopHits hits = search(List.of("район", "кавказ", "осетия"), false, Scorer.GRADE_SUM);
+        assertEquals(IntStream.rangeClosed(1, 1000).filter(pageId -> pageId % 3 == 0 || pageId % 7 == 0).count(),
+                hits.totalHits());
+        assertEquals(2.5f, hits.pages().scores()[0]);
+        assertEquals(21, hits.pages().pageIds()[0]);
+    }
+
+    @Test
+    void searchTest_whenAllLemmasMatchAndTopIsFound_thenStopEarlyWithSameTop() {
+        assertEarlyTermination(List.of("леопард", "горы"), true);
+    }
+
+    @Test
+    void searchTest_whenAnyLemmaMatchesAndTopIsFound_thenStopEarlyWithSameTop() {
+        assertEarlyTermination(List.of("кавказ", "горы"), false);
+    }
+
+    @Test
+    void searchTest_whenPhraseIsQuoted_thenMatchOnlyPagesWithWordsInOrder() {
+        Phrase phrase = new Phrase(List.of(List.of("леопард"), List.of(), List.of("осетия")));
+        TopHits hits = invertedIndex.search(1, new TopKQuery(List.of("леопард", "осетия"), List.of(), 0, List.of(),
+                List.of(phrase), Scorer.GRADE_SUM, 1000, Integer.MAX_VALUE));
+        assertEquals(166, hits.totalHits());
+        assertTrue(Arrays.stream(hits.pages().pageIds()).allMatch(pageId -> pageId % 6 == 0));
+    }
+
+    @Test
+    void searchTest_whenLemmaIsExcluded_thenSkipPagesWithIt() {
+        TopHits hits = invertedIndex.search(1, new TopKQuery(List.of("осетия"), List.of(), 0, List.of("кавказ"),
+                List.of(), Scorer.GRADE_SUM, 1000, Integer.MAX_VALUE));
+        assertEquals(333 - 47, hits.totalHits());
+        assertTrue(Arrays.stream(hits.pages().pageIds()).noneMatch(pageId -> pageId % 7 == 0));
+    }
+
+    @Test
+    void searchTest_whenOptionalLemmaIsNotRequired_thenOnlyAddItsScore() {
+        TopHits hits = invertedIndex.search(1, new TopKQuery(List.of("осетия"), List.of("кавказ"), 0, List.of(),
+                List.of(), Scorer.GRADE_SUM, 1000, Integer.MAX_VALUE));
+        assertEquals(333, hits.totalHits());
+        assertEquals(21, hits.pages().pageIds()[0]);
+        assertEquals(2.5f, hits.pages().scores()[0]);
+    }
+
+    @Test
+    void searchTest_whenMinShouldMatchIsSet_thenMatchPagesWithEnoughOptionalLemmas() {
+        TopHits hits = search(List.of("леопард", "осетия", "кавказ"), 2, Scorer.GRADE_SUM, 1000, Integer.MAX_VALUE);
+        assertEquals(IntStream.rangeClosed(1, 1000).filter(pageId -> pageId % 3 == 0 || pageId % 7 == 0).count(),
+                hits.totalHits());
+        assertEquals(47, search(List.of("осетия", "район", "кавказ"), 2, Scorer.GRADE_SUM, 1000,
+                Integer.MAX_VALUE).totalHits());
+        TopHits exhaustive = search(List.of("горы", "осетия", "кавказ"), 2, Scorer.GRADE_SUM, 5, Integer.MAX_VALUE);
+        TopHits pruned = search(List.of("горы", "осетия", "кавказ"), 2, Scorer.GRADE_SUM, 5, 10);
+        assertArrayEquals(exhaustive.pages().pageIds(), pruned.pages().pageIds());
+        assertArrayEquals(exhaustive.pages().scores(), pruned.pages().scores());
+    }
+
+    private void assertEarlyTermination(List<String> lemmas, boolean matchAll) {
+        TopHits exhaustive = invertedIndex.search(1, query(lemmas, matchAll, Scorer.GRADE_SUM, 5, Integer.MAX_VALUE));
+        TopHits pruned = invertedIndex.search(1, query(lemmas, matchAll, Scorer.GRADE_SUM, 5, 10));
+        assertArrayEquals(exhaustive.pages().pageIds(), pruned.pages().pageIds());
+        assertArrayEquals(exhaustive.pages().scores(), pruned.pages().scores());
+        assertEquals(1000, exhaustive.totalHits());
+        assertTrue(pruned.totalHits() >= 10 && pruned.totalHits() < exhaustive.totalHits());
+    }
+
+    private TopHits search(List<String> lemmas, boolean matchAll, Scorer scorer) {
+        return invertedIndex.search(1, query(lemmas, matchAll, scorer, 1000, Integer.MAX_VALUE));
+    }
+
+    private TopHits search(List<String> optional, int minShouldMatch, Scorer scorer, int k, int exactCountThreshold) {
+        return invertedIndex.search(1, new TopKQuery(List.of(), optional, minShouldMatch, List.of(), List.of(),
+                scorer, k, exactCountThreshold));
+    }
+
+    private static TopKQuery query(List<String> lemmas, boolean matchAll, Scorer scorer, int k,
+                                   int exactCountThreshold) {
+        return matchAll ? TopKQuery.allOf(lemmas, scorer, k, exactCountThreshold)
+                : TopKQuery.anyOf(lemmas, scorer, k, exactCountThreshold);
+    }
+
+    private static byte[] positions(int... positions) {
+        Positions.Builder builder = new Positions.Builder();
+        for (int position : positions) builder.add(position);
+        return builder.build();
+    }
+
+    private Lemma lemma(int id, String value) {
+        Lemma lemma = new Lemma(value, 1, null);
+        lemma.setId(id);
+        return lemma;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.LemmaStatistics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LemmaStatisticsTest {
+    @Mock
+    private DAO dao;
+    @InjectMocks
+    private LemmaStatistics lemmaStatistics;
+
+    @Test
+    void getFrequencyTest_whenAskedTwice_thenReadDatabaseOnce() {
+        doReturn(5).when(dao).getFrequencyForLemmaBySiteId("леопард", 1);
+        doReturn(7).when(dao).getTotalFrequencyForLemma("леопард");
+        assertEquals(5, lemmaStatistics.getFrequency(1, "леопард"));
+        assertEquals(5, lemmaStatistics.getFrequency(1, "леопард"));
+        assertEquals(7, lemmaStatistics.getFrequency(LemmaStatistics.ALL_SITES, "леопард"));
+        verify(dao, times(1)).getFrequencyForLemmaBySiteId("леопард", 1);
+    }
+
+    @Test
+    void invalidateSiteTest_whenSiteIsReindexed_thenDropItsEntriesAndTotals() {
+        doReturn(5, 6).when(dao).getFrequencyForLemmaBySiteId("леопард", 1);
+        doReturn(3).when(dao).getFrequencyForLemmaBySiteId("леопард", 2);
+        doReturn(8, 9).when(dao).getTotalFrequencyForLemma("леопард");
+        lemmaStatistics.getFrequency(1, "леопард");
+        lemmaStatistics.getFrequency(2, "леопард");
+        lemmaStatistics.getFrequency(LemmaStatistics.ALL_SITES, "леопард");
+        lemmaStatistics.invalidateSite(1);
+
+        assertEquals(6, lemmaStatistics.getFrequency(1, "леопард"));
+        assertEquals(3, lemmaStatistics.getFrequency(2, "леопард"));
+        assertEquals(9, lemmaStatistics.getFrequency(LemmaStatistics.ALL_SITES, "леопард"));
+        verify(dao, times(1)).getFrequencyForLemmaBySiteId("леопард", 2);
+    }
+
+    @Test
+    void invalidateSiteTest_whenLoadIsInFlight_thenDoNotServeItsStaleValue() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loading.countDown();
+            invalidated.await();
+            return 5;
+        }).doReturn(6).when(dao).getFrequencyForLemmaBySiteId("леопард", 1);
+        CompletableFuture<Integer> stale =
+                CompletableFuture.supplyAsync(() -> lemmaStatistics.getFrequency(1, "леопард"));
+        loading.await();
+        lemmaStatistics.invalidateSite(1);
+        invalidated.countDown();
+
+        assertEquals(5, stale.get(5, TimeUnit.SECONDS));
+        assertEquals(6, lemmaStatistics.getFrequency(1, "леопард"));
+    }
+}
@@ -1,5 +1,7 @@
 package ru.vladimirsazonov.SiteSearchEngine.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -19,7 +21,8 @@ class MorphologyServiceImplTest {
                 Повторное появление леопарда в Осетии позволяет предположить,
                 что леопард постоянно обитает в некоторых районах Северного
                 Кавказа""";
-    MorphologyServiceImpl morphologyServiceImpl = new MorphologyServiceImpl();
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MorphologyServiceImpl morphologyServiceImpl = new MorphologyServiceImpl(meterRegistry);
 
     @Test
     void getLemmasWordFormsTest_ifDoesNotThrowsException_returnValidSet() {
@@ -55,4 +58,18 @@ class MorphologyServiceImplTest {
         method.setAccessible(true);
         assertEquals(List.of(), method.invoke(morphologyServiceImpl, "   "));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getLemmasSetTest_whenWordsRepeat_thenLemmasAreTakenFromCache() {
+        morphologyServiceImpl.getLemmasSet(text);
+        double misses = cacheGets("miss");
+        assertEquals(Set.of("леопард"), morphologyServiceImpl.getLemmasSet("Леопард леопарда"));
+        assertEquals(misses, cacheGets("miss"));
+        assertTrue(cacheGets("hit") > 0);
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tags("cache", "morphology.words", "result", result)
+                .functionCounter().count();
+    }
+}
@@ -0,0 +1,64 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.Test;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.NearDuplicateIndex;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.SimHash;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearDuplicateIndexTest {
+    private static final String[] WORDS = ("доставка оплата телефон смартфон экран камера батарея память " +
+            "процессор гарантия корзина каталог скидка модель цвет чехол зарядка наушники").split(" ");
+
+    @Test
+    void simHashTest_whenPagesDifferInMinorLemma_thenFingerprintsAreClose() {
+        Map<String, Float> page = page(0);
+        Map<String, Float> printView = new HashMap<>(page);
+        printView.put("печать", 0.5f);
+        long distance = Long.bitCount(SimHash.of(page) ^ SimHash.of(printView));
+        assertTrue(distance <= NearDuplicateIndex.MAX_DISTANCE, "distance " + distance);
+        assertTrue(Long.bitCount(SimHash.of(page) ^ SimHash.of(page(7))) > NearDuplicateIndex.MAX_DISTANCE);
+        assertEquals(0, SimHash.of(Map.of("доставка", 1f, "оплата", 0.8f)));
+    }
+
+    @Test
+    void addTest_whenFingerprintIsWithinDistance_thenRejectOtherPaths() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        long fingerprint = 0x0123_4567_89ab_cdefL;
+        assertEquals(List.of(), index.add(fingerprint, "/a"));
+        assertEquals(List.of("/b"), index.add(fingerprint ^ 1L ^ 1L << 20 ^ 1L << 40, "/b"));
+        assertEquals(List.of(), index.add(fingerprint ^ 1L, "/a"));
+        assertEquals(List.of(), index.add(fingerprint ^ 0xf0L, "/c"));
+        assertEquals(List.of(), index.add(0, "/d"));
+        assertEquals(List.of(), index.add(0, "/e"));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void addTest_whenPreferredPathComesLater_thenKeepItWhateverTheOrder() {
+        long fingerprint = 0x0123_4567_89ab_cdefL;
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        assertEquals(List.of(), index.add(fingerprint, "/catalog/print"));
+        assertEquals(List.of("/catalog/print"), index.add(fingerprint ^ 1L, "/catalog/b"));
+        assertEquals(List.of("/catalog/b"), index.add(fingerprint ^ 2L, "/catalog/a"));
+        assertEquals(List.of("/catalog/c"), index.add(fingerprint, "/catalog/c"));
+        assertEquals(1, index.size());
+
+        NearDuplicateIndex reversed = new NearDuplicateIndex();
+        assertEquals(List.of(), reversed.add(fingerprint ^ 2L, "/catalog/a"));
+        assertEquals(List.of("/catalog/b"), reversed.add(fingerprint ^ 1L, "/catalog/b"));
+        assertEquals(List.of("/catalog/print"), reversed.add(fingerprint, "/catalog/print"));
+        assertEquals(1, reversed.size());
+    }
+
+    private static Map<String, Float> page(int shift) {
+        Map<String, Float> weights = new HashMap<>();
+        for (int i = 0; i < WORDS.length; i++)
+            weights.put(WORDS[(i + shift) % WORDS.length] + (shift == 0 || i % 2 == 0 ? "" : shift), 1f + i % 5);
+        return weights;
+    }
+}
@@ -0,0 +1,181 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.vladimirsazonov.SiteSearchEngine.config.CrawlSettings;
+import ru.vladimirsazonov.SiteSearchEngine.dto.StatisticsResponse;
+import ru.vladimirsazonov.SiteSearchEngine.model.StoredPage;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.FetchResult;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.PageFetcher;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.SiteCrawlMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageFetcherTest {
+    private static final String PAGE = "<html><title>Страница</title></html>";
+    private static final String CP1251_PAGE =
+            "<html><head><meta charset=\"windows-1251\"><title>Страница</title></head></html>";
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger maxActiveRequests = new AtomicInteger();
+    private final CountDownLatch concurrentRequests = new CountDownLatch(2);
+    private final AtomicBoolean overlapMissed = new AtomicBoolean();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SiteCrawlMetrics metrics = new SiteCrawlMetrics(meterRegistry, "http://127.0.0.1");
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            maxActiveRequests.accumulateAndGet(activeRequests.incrementAndGet(), Math::max);
+            String path = exchange.getRequestURI().getPath();
+            try {
+                if (path.startsWith("/concurrent")) {
+                    concurrentRequests.countDown();
+                    if (!concurrentRequests.await(5, TimeUnit.SECONDS)) overlapMissed.set(true);
+                }
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            activeRequests.decrementAndGet();
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            byte[] body = switch (path) {
+                case "/binary", "/huge" -> new byte[3 * PageFetcher.MAX_BODY_SIZE / 2];
+                case "/windows-1251" -> CP1251_PAGE.getBytes(Charset.forName("windows-1251"));
+                default -> PAGE.getBytes(StandardCharsets.UTF_8);
+            };
+            exchange.getResponseHeaders().add("Content-Type", switch (path) {
+                case "/binary" -> "application/pdf";
+                case "/windows-1251" -> "text/html";
+                default -> "text/html; charset=utf-8";
+            });
+            exchange.sendResponseHeaders(path.equals("/missing") ? 404 : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            } catch (IOException e) {
+                // the client cancelled the rest of the body
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void fetchTest_whenManyPagesRequested_thenKeepConcurrencyLimitOfHost() {
+        CrawlSettings crawlSettings = new CrawlSettings();
+        crawlSettings.setRequestsPerSecond(1000);
+        crawlSettings.setBurst(20);
+        crawlSettings.setMaxConcurrentRequestsPerHost(2);
+        PageFetcher pageFetcher = new PageFetcher(HttpClient.newHttpClient(), crawlSettings, "test", "test", metrics);
+        List<FetchResult> results = IntStream.range(0, 8)
+                .mapToObj(i -> pageFetcher.fetch(baseUrl + "/concurrent" + i, null))
+                .toList()
+                .stream()
+                .map(CompletableFuture::join)
+                .toList();
+        assertTrue(results.stream().allMatch(result -> result.statusCode() == 200
+                && new String(result.body(), StandardCharsets.UTF_8).contains("Страница")));
+        assertFalse(overlapMissed.get());
+        assertTrue(maxActiveRequests.get() <= 2);
+    }
+
+    @Test
+    void fetchTest_whenStoredPageHasEtag_thenSendConditionalRequest() {
+        PageFetcher pageFetcher = new PageFetcher(HttpClient.newHttpClient(), new CrawlSettings(), "test", "test",
+                metrics);
+        FetchResult first = pageFetcher.fetch(baseUrl + "/page", null).join();
+        assertEquals("\"v1\"", first.etag());
+        StoredPage storedPage = new StoredPage(1, "/page", 0, first.etag(), null, 0);
+        assertTrue(pageFetcher.fetch(baseUrl + "/page", storedPage).join().isNotModified());
+    }
+
+    @Test
+    void fetchTest_whenPageIsMissing_thenReturnHttpStatusException() {
+        PageFetcher pageFetcher = new PageFetcher(HttpClient.newHttpClient(), new CrawlSettings(), "test", "test",
+                metrics);
+        FetchResult result = pageFetcher.fetch(baseUrl + "/missing", null).join();
+        assertEquals(404, result.statusCode());
+        assertInstanceOf(HttpStatusException.class, result.exception());
+    }
+
+    @Test
+    void fetchTest_whenPagesFetched_thenRecordLatencyAndBytes() {
+        PageFetcher pageFetcher = new PageFetcher(HttpClient.newHttpClient(), new CrawlSettings(), "test", "test",
+                metrics);
+        pageFetcher.fetch(baseUrl + "/page", null).join();
+        pageFetcher.fetch(baseUrl + "/missing", null).join();
+
+        StatisticsResponse.CrawlProgress progress = metrics.getProgress();
+        assertEquals(2, progress.pagesFetched());
+        assertEquals(PAGE.getBytes(StandardCharsets.UTF_8).length, progress.bytesDownloaded());
+        assertTrue(progress.meanFetchMillis() >= 50);
+        assertEquals(2, meterRegistry.get("crawl.fetch.latency").timer().count());
+        assertEquals(0, pageFetcher.getQueuedCount());
+    }
+
+    @Test
+    void fetchTest_whenContentTypeIsBinary_thenSkipBody() {
+        PageFetcher pageFetcher = new PageFetcher(HttpClient.newHttpClient(), new CrawlSettings(), "test", "test",
+                metrics);
+        FetchResult result = pageFetcher.fetch(baseUrl + "/binary", null).join();
+        assertInstanceOf(UnsupportedMimeTypeException.class, result.exception());
+        assertNull(result.body());
+        assertTrue(metrics.getProgress().bytesDownloaded() < PageFetcher.MAX_BODY_SIZE);
+    }
+
+    @Test
+    void fetchTest_whenPageIsOversized_thenTruncateBody() {
+        PageFetcher pageFetcher = new PageFetcher(HttpClient.newHttpClient(), new CrawlSettings(), "test", "test",
+                metrics);
+        FetchResult result = pageFetcher.fetch(baseUrl + "/huge", null).join();
+        assertNull(result.exception());
+        assertEquals(PageFetcher.MAX_BODY_SIZE, result.body().length);
+    }
+
+    @Test
+    void fetchTest_whenCharsetIsInMetaTag_thenLeaveItToParser() throws IOException {
+        PageFetcher pageFetcher = new PageFetcher(HttpClient.newHttpClient(), new CrawlSettings(), "test", "test",
+                metrics);
+        FetchResult result = pageFetcher.fetch(baseUrl + "/windows-1251", null).join();
+        assertNull(result.charset());
+        Document document = Jsoup.parse(new ByteArrayInputStream(result.body()), result.charset(), result.url());
+        assertEquals("Страница", document.title());
+        assertEquals("utf-8", pageFetcher.fetch(baseUrl + "/page", null).join().charset());
+    }
+}
@@ -0,0 +1,87 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.vladimirsazonov.SiteSearchEngine.config.SearchSettings;
+import ru.vladimirsazonov.SiteSearchEngine.dto.SearchResultResponse;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.LemmaStatistics;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.MinShouldMatch;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.ParsedQuery;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.Ranking;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.SearchResultCache;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SearchResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        SearchSettings searchSettings = new SearchSettings();
+        searchSettings.setResultCacheMaxEntryBytes(2048);
+        cache = new SearchResultCache(searchSettings, meterRegistry);
+    }
+
+    @Test
+    void keyTest_whenQueriesAreEqual_thenKeysAreEqual() {
+        assertEquals(cache.key(query("леопард", "осетия"), MinShouldMatch.ALL, 1, 0, 20, Ranking.RELEVANCE),
+                cache.key(query("леопард", "осетия"), MinShouldMatch.of(null), 1, 0, 20, Ranking.RELEVANCE));
+        assertNotEquals(cache.key(query("леопард", "осетия"), MinShouldMatch.ALL, 1, 0, 20, Ranking.RELEVANCE),
+                cache.key(query("леопард", "осетия"), MinShouldMatch.of("1"), 1, 0, 20, Ranking.RELEVANCE));
+        assertNotEquals(cache.key(query("леопард"), MinShouldMatch.ALL, 1, 0, 20, Ranking.RELEVANCE),
+                cache.key(query("леопард"), MinShouldMatch.ALL, 1, 20, 20, Ranking.RELEVANCE));
+        assertNotEquals(cache.key(query("леопард"), MinShouldMatch.ALL, 1, 0, 20, Ranking.RELEVANCE),
+                cache.key(query("леопард"), MinShouldMatch.ALL, 1, 0, 20, Ranking.BM25));
+    }
+
+    @Test
+    void invalidateSiteTest_whenSiteIsReindexed_thenDropItsAndAllSitesResponses() {
+        SearchResultCache.Key siteKey = cache.key(query("леопард"), MinShouldMatch.ALL, 1, 0, 20, Ranking.RELEVANCE);
+        SearchResultCache.Key otherSiteKey = cache.key(query("леопард"), MinShouldMatch.ALL, 2, 0, 20,
+                Ranking.RELEVANCE);
+        SearchResultCache.Key allSitesKey = cache.key(query("леопард"), MinShouldMatch.ALL,
+                LemmaStatistics.ALL_SITES, 0, 20, Ranking.RELEVANCE);
+        cache.put(siteKey, response(1));
+        cache.put(otherSiteKey, response(1));
+        cache.put(allSitesKey, response(1));
+        cache.invalidateSite(1);
+
+        assertNull(cache.get(siteKey));
+        assertNull(cache.get(allSitesKey));
+        assertNotNull(cache.get(otherSiteKey));
+        cache.put(siteKey, response(1));
+        assertNull(cache.get(cache.key(query("леопард"), MinShouldMatch.ALL, 1, 0, 20, Ranking.RELEVANCE)));
+        assertEquals(1, cacheGets("hit"));
+        assertEquals(3, cacheGets("miss"));
+    }
+
+    @Test
+    void putTest_whenResponseIsOverEntryCap_thenNotCached() {
+        SearchResultCache.Key key = cache.key(query("леопард"), MinShouldMatch.ALL, 1, 0, 20, Ranking.RELEVANCE);
+        cache.put(key, response(20));
+        assertNull(cache.get(key));
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tags("cache", "search.results", "result", result)
+                .functionCounter().count();
+    }
+
+    private static ParsedQuery query(String... lemmas) {
+        return new ParsedQuery(List.of(), List.of(lemmas), List.of(), List.of());
+    }
+
+    private SearchResultResponse response(int size) {
+        SearchResultResponse.SearchResult[] data = new SearchResultResponse.SearchResult[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = new SearchResultResponse.SearchResult("http://www.playback.ru", "Playback", "/" + i,
+                    "Страница", "<b>Леопард</b> в Осетии", 1f);
+        }
+        return new SearchResultResponse(size, data);
+    }
+}
@@ -1,28 +1,42 @@
 package ru.vladimirsazonov.SiteSearchEngine.services;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import ru.vladimirsazonov.SiteSearchEngine.config.SearchSettings;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchEngineResponse;
 import ru.vladimirsazonov.SiteSearchEngine.dto.SearchResultResponse;
 import ru.vladimirsazonov.SiteSearchEngine.exceptions.RunApplicationException;
+import ru.vladimirsazonov.SiteSearchEngine.model.PageText;
 import ru.vladimirsazonov.SiteSearchEngine.model.Site;
 import ru.vladimirsazonov.SiteSearchEngine.model.Status;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
 import ru.vladimirsazonov.SiteSearchEngine.services.morphology.MorphologyService;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.InvertedIndex;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.PageHits;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Phrase;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.Scorer;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopHits;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.index.TopKQuery;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.LemmaStatistics;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.SearchResultCache;
 import ru.vladimirsazonov.SiteSearchEngine.services.search.SearchServiceImpl;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +45,15 @@ class SearchServiceImplTest {
     private MorphologyService morphologyService;
     @Mock
     private DAO dao;
+    @Mock
+    private InvertedIndex invertedIndex;
+    @Mock
+    private LemmaStatistics lemmaStatistics;
+    @Spy
+    private SearchSettings searchSettings = new SearchSettings();
+    @Spy
+    private SearchResultCache searchResultCache = new SearchResultCache(new SearchSettings(),
+            new SimpleMeterRegistry());
     @InjectMocks
     private SearchServiceImpl searchServiceImpl;
     private Site site;
@@ -45,7 +68,7 @@ class SearchServiceImplTest {
     @NullAndEmptySource
     void startSearchTest_whenQueryIsNullOrIsBlank_thenThrowsException(String query) {
         Exception exception = assertThrows(RunApplicationException.class,
-                () -> searchServiceImpl.startSearch(query, null, 0, 0));
+                () -> searchServiceImpl.startSearch(query, null, 0, 0, null, null));
         assertEquals("Задан пустой поисковый запрос", exception.getMessage());
     }
 
@@ -56,23 +79,23 @@ class SearchServiceImplTest {
         site.setStatusTime(statusTime);
         doReturn(List.of(site, this.site)).when(dao).findAllSites();
         Exception exception = assertThrows(RunApplicationException.class,
-                () -> searchServiceImpl.startSearch("запрос", null, 0, 20));
+                () -> searchServiceImpl.startSearch("запрос", null, 0, 20, null, null));
         assertEquals("Сайты ещё не проиндексированы", exception.getMessage());
     }
 
     @Test
     void startSearchTest_whenSiteUrlIsNotNullAndPagesListIsEmpty_thenReturnValidSearchResultResponse() {
         doReturn(site).when(dao).findSiteByUrl(site.getUrl());
-        site.setStatus(Status.INDEXED);
+        site.setActiveGeneration(1);
         doReturn(Set.of()).when(morphologyService).getLemmasSet(anyString());
         assertEquals(new SearchResultResponse(0, new SearchResultResponse.SearchResult[0]),
-                searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20));
+                searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20, null, null));
     }
 
     @Test
     void startSearchTest_whenSiteUrlIsNotNullAndSiteIsNull_thenThrowsException() {
         Exception exception = assertThrows(RunApplicationException.class,
-                () -> searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20));
+                () -> searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20, null, null));
         assertEquals("Данный сайт не указан в конфигурационном файле", exception.getMessage());
     }
 
@@ -80,14 +103,183 @@ class SearchServiceImplTest {
     void startSearchTest_whenSiteUrlIsNotNullAndSiteIsNotIndexedYet_thenThrowsException() {
         doReturn(site).when(dao).findSiteByUrl(site.getUrl());
         Exception exception = assertThrows(RunApplicationException.class,
-                () -> searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20));
+                () -> searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20, null, null));
         assertEquals("Сайт ещё не проиндексирован", exception.getMessage());
     }
 
+    @Test
+    void startSearchTest_whenSiteIsReindexedWithActiveGeneration_thenSearchActiveGeneration() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setStatus(Status.INDEXING);
+        site.setActiveGeneration(2);
+        doReturn(Set.of("запрос")).when(morphologyService).getLemmasSet(anyString());
+        doReturn(new TopHits(new PageHits(new int[]{1}, new float[]{1f}, 1), 1))
+                .when(invertedIndex).search(site.getId(), query(List.of("запрос"), 20));
+        doReturn(List.of(page(1))).when(dao).findPageTextsByIds(List.of(1));
+        SearchResultResponse response = (SearchResultResponse) searchServiceImpl
+                .startSearch("запрос", site.getUrl(), 0, 20, null, null);
+        assertEquals(1, response.getCount());
+    }
+
     @Test
     void startSearchTest_whenSiteUrlIsNotNull_thenReturnValidSearchResultResponse() {
         doReturn(site).when(dao).findSiteByUrl(site.getUrl());
-        site.setStatus(Status.INDEXED);
-        assertEquals(new SearchEngineResponse(), searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20));
+        site.setActiveGeneration(1);
+        assertEquals(new SearchEngineResponse(),
+                searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20, null, null));
+    }
+
+    @Test
+    void startSearchTest_whenOffsetIsSet_thenReturnRequestedWindowAndTotalCount() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(1);
+        doReturn(Set.of("запрос")).when(morphologyService).getLemmasSet(anyString());
+        doReturn(new TopHits(new PageHits(new int[]{2, 4, 3}, new float[]{5f, 4f, 3f}, 3), 5))
+                .when(invertedIndex).search(site.getId(), query(List.of("запрос"), 3));
+        doReturn(List.of(page(3), page(4))).when(dao).findPageTextsByIds(List.of(4, 3));
+        SearchResultResponse response = (SearchResultResponse) searchServiceImpl
+                .startSearch("запрос", site.getUrl(), 1, 2, null, null);
+        assertEquals(5, response.getCount());
+        assertEquals(List.of("/4", "/3"), Arrays.stream(response.getData())
+                .map(SearchResultResponse.SearchResult::uri)
+                .toList());
+        assertEquals(0.8f, response.getData()[0].relevance());
+    }
+
+    @Test
+    void startSearchTest_whenSiteIsNotLoadedInIndex_thenLoadActiveGenerationBeforeSearch() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(3);
+        doReturn(Set.of("запрос")).when(morphologyService).getLemmasSet(anyString());
+        doReturn(new TopHits(new PageHits(new int[]{1}, new float[]{1f}, 1), 1))
+                .when(invertedIndex).search(site.getId(), query(List.of("запрос"), 20));
+        doReturn(List.of(page(1))).when(dao).findPageTextsByIds(List.of(1));
+        searchServiceImpl.startSearch("запрос", site.getUrl(), 0, 20, null, null);
+        InOrder inOrder = inOrder(invertedIndex);
+        inOrder.verify(invertedIndex).loadSiteIfAbsent(site.getId(), 3);
+        inOrder.verify(invertedIndex).search(site.getId(), query(List.of("запрос"), 20));
+    }
+
+    @Test
+    void startSearchTest_whenAllScoresAreZero_thenReturnZeroRelevance() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(1);
+        doReturn(Set.of("запрос")).when(morphologyService).getLemmasSet(anyString());
+        doReturn(new TopHits(new PageHits(new int[]{2, 1}, new float[]{0f, 0f}, 2), 2))
+                .when(invertedIndex).search(site.getId(), query(List.of("запрос"), 2));
+        doReturn(List.of(page(1), page(2))).when(dao).findPageTextsByIds(anyList());
+        SearchResultResponse response = (SearchResultResponse) searchServiceImpl
+                .startSearch("запрос", site.getUrl(), 0, 2, null, null);
+        assertEquals(List.of(0f, 0f), Arrays.stream(response.getData())
+                .map(SearchResultResponse.SearchResult::relevance)
+                .toList());
+    }
+
+    @Test
+    void startSearchTest_whenLemmasAreTooCommon_thenIntersectOnlyRareOnes() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(1);
+        searchSettings.setMaxLemmaFrequencyPercent(50);
+        searchSettings.setFrequencyCutoffMinPages(10);
+        doReturn(Set.of("леопард", "купить", "цена")).when(morphologyService).getLemmasSet(anyString());
+        doReturn(20).when(lemmaStatistics).getPagesCount(site.getId());
+        doReturn(3).when(lemmaStatistics).getFrequency(site.getId(), "леопард");
+        doReturn(18).when(lemmaStatistics).getFrequency(site.getId(), "купить");
+        doReturn(11).when(lemmaStatistics).getFrequency(site.getId(), "цена");
+        doReturn(TopHits.EMPTY).when(invertedIndex).search(site.getId(), query(List.of("леопард"), 20));
+        SearchResultResponse response = (SearchResultResponse) searchServiceImpl
+                .startSearch("купить леопарда цена", site.getUrl(), 0, 20, null, null);
+        assertEquals(0, response.getCount());
+        verify(invertedIndex).search(site.getId(), query(List.of("леопард"), 20));
+    }
+
+    @Test
+    void startSearchTest_whenRankedByBm25_thenWeighLemmasByRarity() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(1);
+        doReturn(Set.of("леопард", "купить")).when(morphologyService).getLemmasSet(anyString());
+        doReturn(1000).when(lemmaStatistics).getPagesCount(site.getId());
+        doReturn(10).when(lemmaStatistics).getFrequency(site.getId(), "леопард");
+        doReturn(500).when(lemmaStatistics).getFrequency(site.getId(), "купить");
+        ArgumentCaptor<TopKQuery> query = ArgumentCaptor.forClass(TopKQuery.class);
+        doReturn(TopHits.EMPTY).when(invertedIndex).search(eq(site.getId()), query.capture());
+        searchServiceImpl.startSearch("купить леопарда", site.getUrl(), 0, 20, "bm25", null);
+        assertEquals(List.of("леопард", "купить"), query.getValue().lemmas());
+        Scorer scorer = query.getValue().scorer();
+        assertTrue(scorer.score(0, 1f, Scorer.K1) > 2 * scorer.score(1, 1f, Scorer.K1));
+    }
+
+    @Test
+    void startSearchTest_whenRankingIsUnknown_thenThrowsException() {
+        Exception exception = assertThrows(RunApplicationException.class,
+                () -> searchServiceImpl.startSearch("запрос", null, 0, 20, "pagerank", null));
+        assertEquals("Неизвестный способ ранжирования: pagerank", exception.getMessage());
+    }
+
+    @Test
+    void startSearchTest_whenQueryIsRepeated_thenServeCachedResponseUntilSiteIsReindexed() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(1);
+        doReturn(Set.of("леопард", "осетия")).when(morphologyService).getLemmasSet(anyString());
+        doReturn(new TopHits(new PageHits(new int[]{1}, new float[]{1f}, 1), 1))
+                .when(invertedIndex).search(eq(site.getId()), any());
+        doReturn(List.of(page(1))).when(dao).findPageTextsByIds(List.of(1));
+        SearchEngineResponse first = searchServiceImpl.startSearch("леопард осетия", site.getUrl(), 0, 20, null, null);
+        assertSame(first, searchServiceImpl.startSearch("осетии леопарды", site.getUrl(), 0, 20, null, null));
+        searchResultCache.invalidateSite(site.getId());
+        assertNotSame(first, searchServiceImpl.startSearch("леопард осетия", site.getUrl(), 0, 20, null, null));
+        verify(invertedIndex, times(2)).search(eq(site.getId()), any());
+    }
+
+    @Test
+    void startSearchTest_whenQueryHasOperators_thenSplitItIntoClauses() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(1);
+        doReturn(Set.of("леопард")).when(morphologyService).getLemmasSet("леопард");
+        doReturn(Set.of("осетия")).when(morphologyService).getLemmasSet("осетии");
+        doReturn(Set.of("кавказ")).when(morphologyService).getLemmasSet("кавказ");
+        doAnswer(invocation -> {
+            MorphologyService.LemmaConsumer consumer = invocation.getArgument(1);
+            consumer.accept("снежный", 0);
+            consumer.accept("барс", 2);
+            return 3;
+        }).when(morphologyService).forEachLemma(eq("снежный и барс"), any());
+        ArgumentCaptor<TopKQuery> query = ArgumentCaptor.forClass(TopKQuery.class);
+        doReturn(TopHits.EMPTY).when(invertedIndex).search(eq(site.getId()), query.capture());
+        searchServiceImpl.startSearch("+леопард \"снежный и барс\" -кавказ осетии", site.getUrl(), 0, 20, null,
+                null);
+        assertEquals(List.of("барс", "леопард", "снежный", "осетия"), query.getValue().required());
+        assertEquals(List.of(), query.getValue().optional());
+        assertEquals(List.of("кавказ"), query.getValue().excluded());
+        assertEquals(List.of(new Phrase(List.of(List.of("снежный"), List.of(), List.of("барс")))),
+                query.getValue().phrases());
+    }
+
+    @Test
+    void startSearchTest_whenMinShouldMatchIsSet_thenKeepLemmasOptional() {
+        doReturn(site).when(dao).findSiteByUrl(site.getUrl());
+        site.setActiveGeneration(1);
+        doReturn(Set.of("леопард", "осетия", "кавказ")).when(morphologyService).getLemmasSet(anyString());
+        ArgumentCaptor<TopKQuery> query = ArgumentCaptor.forClass(TopKQuery.class);
+        doReturn(TopHits.EMPTY).when(invertedIndex).search(eq(site.getId()), query.capture());
+        searchServiceImpl.startSearch("леопард осетия кавказ", site.getUrl(), 0, 20, null, "70%");
+        assertEquals(List.of(), query.getValue().required());
+        assertEquals(List.of("кавказ", "леопард", "осетия"), query.getValue().optional());
+        assertEquals(2, query.getValue().minShouldMatch());
+    }
+
+    @Test
+    void startSearchTest_whenMinShouldMatchIsInvalid_thenThrowsException() {
+        Exception exception = assertThrows(RunApplicationException.class,
+                () -> searchServiceImpl.startSearch("запрос", null, 0, 20, null, "половина"));
+        assertEquals("Неверное значение minShouldMatch: половина", exception.getMessage());
+    }
+
+    private TopKQuery query(List<String> lemmas, int k) {
+        return TopKQuery.allOf(lemmas, Scorer.GRADE_SUM, k, new SearchSettings().getExactCountThreshold());
+    }
+
+    private PageText page(int id) {
+        return new PageText(id, site.getId(), "/" + id, "Страница", "запрос");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.Test;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.Fnv1aHash;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.LongHashSet;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.SiteFrontier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SiteFrontierTest {
+    private static final String SITE_URL = "http://www.playback.ru";
+
+    @Test
+    void admitTest_whenUrlIsSeenAgain_thenRejectIt() {
+        SiteFrontier frontier = new SiteFrontier(SITE_URL, 10, 100);
+        assertTrue(frontier.admit(SITE_URL, 0));
+        assertFalse(frontier.admit(SITE_URL + "/", 1));
+        assertTrue(frontier.admit(SITE_URL + "/dostavka.html", 1));
+        assertFalse(frontier.admit(SITE_URL + "/dostavka.html", 2));
+        assertEquals(2, frontier.getVisitedCount());
+    }
+
+    @Test
+    void admitTest_whenLimitsAreReached_thenRejectUrls() {
+        SiteFrontier frontier = new SiteFrontier(SITE_URL, 1, 3);
+        assertTrue(frontier.admit(SITE_URL, 0));
+        assertFalse(frontier.admit(SITE_URL + "/catalog/deep.html", 2));
+        assertTrue(frontier.admit(SITE_URL + "/a.html", 1));
+        assertTrue(frontier.admit(SITE_URL + "/b.html", 1));
+        assertFalse(frontier.admit(SITE_URL + "/c.html", 1));
+    }
+
+    @Test
+    void restoreTest_whenSnapshotTaken_thenKeepVisitedPathsAndUrlsNotWritten() {
+        SiteFrontier frontier = new SiteFrontier(SITE_URL, 10, 100);
+        frontier.admit(SITE_URL, 0);
+        frontier.admit(SITE_URL + "/dostavka.html", 1);
+        frontier.admit(SITE_URL + "/catalog/", 1);
+        frontier.complete("/");
+        frontier.complete("/catalog/");
+
+        SiteFrontier restored = SiteFrontier.restore(SITE_URL, 10, 100, frontier.snapshot());
+        assertEquals(List.of(new SiteFrontier.PendingUrl(SITE_URL + "/dostavka.html", 1)), restored.getPendingUrls());
+        assertEquals(3, restored.getVisitedCount());
+        assertFalse(restored.admit(SITE_URL + "/catalog/", 2));
+        assertTrue(restored.admit(SITE_URL + "/contacts.html", 2));
+    }
+
+    @Test
+    void admitTest_whenPathHashWasVisited_thenRejectPathAsCollision() {
+        LongHashSet visitedPaths = new LongHashSet();
+        visitedPaths.add(Fnv1aHash.of("/dostavka.html"));
+        SiteFrontier frontier = SiteFrontier.restore(SITE_URL, 10, 100, new SiteFrontier.Snapshot(
+                visitedPaths.toBytes(), new SiteFrontier(SITE_URL, 10, 100).snapshot().pendingUrls()));
+        assertFalse(frontier.admit(SITE_URL + "/dostavka.html", 1));
+        assertTrue(frontier.getPendingUrls().isEmpty());
+    }
+
+    @Test
+    void admitTest_whenMaxPagesOfDistinctPathsAdmitted_thenAdmitEveryOne() {
+        SiteFrontier frontier = new SiteFrontier(SITE_URL, 10, 50_000);
+        for (int i = 0; i < 50_000; i++) assertTrue(frontier.admit(SITE_URL + "/catalog/item-" + i + ".html", 1));
+        assertEquals(50_000, frontier.getVisitedCount());
+    }
+}
@@ -0,0 +1,274 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.vladimirsazonov.SiteSearchEngine.model.CrawlCheckpoint;
+import ru.vladimirsazonov.SiteSearchEngine.model.IndexEntry;
+import ru.vladimirsazonov.SiteSearchEngine.model.Lemma;
+import ru.vladimirsazonov.SiteSearchEngine.model.Page;
+import ru.vladimirsazonov.SiteSearchEngine.model.Site;
+import ru.vladimirsazonov.SiteSearchEngine.model.StoredPage;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.LinkHandleTaskResult;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.SiteCrawlMetrics;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.SiteFrontier;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.SiteIndexWriter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SiteIndexWriterTest {
+    @Mock
+    private DAO dao;
+    private Site site;
+    private SiteIndexWriter writer;
+    private SiteCrawlMetrics metrics;
+    private SiteFrontier frontier;
+    private Map<String, StoredPage> storedPages;
+
+    @BeforeEach
+    void setUp() {
+        site = new Site("Playback", "http://www.playback.ru");
+        metrics = new SiteCrawlMetrics(new SimpleMeterRegistry(), site.getUrl());
+        frontier = new SiteFrontier(site.getUrl(), 10, 100);
+        storedPages = Map.of(
+                "/old", new StoredPage(1, "/old", 11, "\"v1\"", null, 0),
+                "/changed", new StoredPage(2, "/changed", 12, null, null, 0),
+                "/gone", new StoredPage(3, "/gone", 13, null, null, 0));
+        writer = new SiteIndexWriter(site, 2, dao, storedPages, frontier, metrics);
+    }
+
+    @Test
+    void writeUntilTest_whenPagesShareLemmas_thenResolveEachLemmaOnce() throws Exception {
+        doAnswer(invocation -> {
+            Collection<Lemma> lemmas = invocation.getArgument(0);
+            lemmas.forEach(lemma -> lemma.setId(lemma.getLemma().equals("леопард") ? 7 : 8));
+            return null;
+        }).when(dao).saveLemmas(anyCollection());
+        writer.getQueue().put(result("/a", Map.of("леопард", 1f, "осетия", 0.8f)));
+        writer.getQueue().put(result("/b", Map.of("леопард", 1.8f)));
+        writer.writeUntil(() -> true);
+
+        ArgumentCaptor<Collection<Lemma>> lemmas = ArgumentCaptor.forClass(Collection.class);
+        verify(dao).saveLemmas(lemmas.capture());
+        assertEquals(Map.of("леопард", 0, "осетия", 0), lemmas.getValue().stream()
+                .collect(Collectors.toMap(Lemma::getLemma, Lemma::getFrequency)));
+        ArgumentCaptor<List<IndexEntry>> entries = ArgumentCaptor.forClass(List.class);
+        verify(dao).saveIndexEntries(entries.capture());
+        assertEquals(3, entries.getValue().size());
+        assertEquals(2, entries.getValue().stream().filter(entry -> entry.lemmaId() == 7).count());
+        ArgumentCaptor<List<Page>> pages = ArgumentCaptor.forClass(List.class);
+        verify(dao).savePages(pages.capture());
+        assertEquals("Страница /a", pages.getValue().get(0).getTitle());
+        assertEquals("текст /a", pages.getValue().get(0).getText());
+        assertEquals(2, pages.getValue().get(0).getGeneration());
+        assertFalse(writer.isAllFailed());
+    }
+
+    @Test
+    void writeUntilTest_whenAllResultsFailed_thenReportFailure() throws Exception {
+        LinkHandleTaskResult failed = new LinkHandleTaskResult("/", 0, 0, "");
+        failed.setException(new IOException("timeout"));
+        failed.setLemmasAndRanksMap(Map.of());
+        writer.getQueue().put(failed);
+        writer.writeUntil(() -> true);
+
+        verify(dao, never()).savePages(anyList());
+        assertTrue(writer.isAllFailed());
+        assertTrue(writer.getLastErrorMessage().contains(site.getUrl()));
+        assertEquals(Map.of("IOException", 1L), metrics.getProgress().errors());
+    }
+
+    @Test
+    void writeUntilTest_whenNothingFetched_thenReportEmptyCrawlNotAllFailed() throws Exception {
+        writer.writeUntil(() -> true);
+
+        assertTrue(writer.isEmpty());
+        assertFalse(writer.isAllFailed());
+    }
+
+    @Test
+    void writeUntilTest_whenPagesWereStoredBefore_thenWriteDiffsIntoShadowGeneration() throws Exception {
+        LinkHandleTaskResult unchanged = result("/old", Map.of());
+        unchanged.setUnchanged(true);
+        unchanged.setEtag("\"v2\"");
+        writer.getQueue().put(unchanged);
+        writer.getQueue().put(result("/changed", Map.of("леопард", 1f)));
+        writer.writeUntil(() -> true);
+        writer.retireDisappearedPages();
+
+        ArgumentCaptor<List<Page>> validators = ArgumentCaptor.forClass(List.class);
+        verify(dao).updatePagesValidators(validators.capture());
+        assertEquals("\"v2\"", validators.getValue().get(0).getEtag());
+        ArgumentCaptor<List<Page>> changed = ArgumentCaptor.forClass(List.class);
+        verify(dao).savePages(changed.capture());
+        assertEquals("/changed", changed.getValue().get(0).getPath());
+        assertEquals(2, changed.getValue().get(0).getGeneration());
+        verify(dao).retirePages(List.of(2), 2);
+        verify(dao).retirePages(List.of(3), 2);
+    }
+
+    @Test
+    void writeUntilTest_whenInterrupted_thenSaveCheckpointToResumeFrom() throws Exception {
+        frontier.admit(site.getUrl() + "/old", 1);
+        frontier.admit(site.getUrl() + "/changed", 1);
+        writer.setCheckpointInterval(Duration.ofHours(1));
+        LinkHandleTaskResult unchanged = result("/old", Map.of());
+        unchanged.setUnchanged(true);
+        writer.getQueue().put(unchanged);
+        AtomicInteger polls = new AtomicInteger();
+        assertThrows(InterruptedException.class, () -> writer.writeUntil(() -> {
+            if (polls.incrementAndGet() > 1) Thread.currentThread().interrupt();
+            return false;
+        }));
+
+        ArgumentCaptor<CrawlCheckpoint> checkpoint = ArgumentCaptor.forClass(CrawlCheckpoint.class);
+        verify(dao).saveCheckpoint(checkpoint.capture());
+        assertEquals(2, checkpoint.getValue().getGeneration());
+        SiteFrontier restored = SiteFrontier.restore(site.getUrl(), 10, 100, new SiteFrontier.Snapshot(
+                checkpoint.getValue().getVisitedPaths(), checkpoint.getValue().getPendingUrls()));
+        assertEquals(List.of(new SiteFrontier.PendingUrl(site.getUrl() + "/changed", 1)), restored.getPendingUrls());
+        assertFalse(restored.admit(site.getUrl() + "/old", 2));
+
+        SiteIndexWriter resumed = new SiteIndexWriter(site, 2, dao, storedPages, restored, metrics);
+        resumed.restore(checkpoint.getValue());
+        resumed.writeUntil(() -> true);
+        resumed.retireDisappearedPages();
+        assertFalse(resumed.isAllFailed());
+        ArgumentCaptor<Collection<Integer>> retired = ArgumentCaptor.forClass(Collection.class);
+        verify(dao).retirePages(retired.capture(), eq(2));
+        assertEquals(Set.of(2, 3), Set.copyOf(retired.getValue()));
+    }
+
+    @Test
+    void writeUntilTest_whenPageIsNearDuplicate_thenSkipItAndRetireItsStoredCopy() throws Exception {
+        writer.setSkipNearDuplicates(true);
+        doAnswer(invocation -> {
+            Collection<Lemma> lemmas = invocation.getArgument(0);
+            lemmas.forEach(lemma -> lemma.setId(7));
+            return null;
+        }).when(dao).saveLemmas(anyCollection());
+        LinkHandleTaskResult original = result("/a", Map.of("леопард", 1f));
+        original.setFingerprint(0x0123_4567_89ab_cdefL);
+        LinkHandleTaskResult copy = result("/changed", Map.of("леопард", 1f));
+        copy.setFingerprint(0x0123_4567_89ab_cdefL ^ 1L << 33);
+        writer.getQueue().put(original);
+        writer.getQueue().put(copy);
+        writer.writeUntil(() -> true);
+        writer.retireDisappearedPages();
+
+        ArgumentCaptor<List<Page>> pages = ArgumentCaptor.forClass(List.class);
+        verify(dao).savePages(pages.capture());
+        assertEquals(List.of("/a"), pages.getValue().stream().map(Page::getPath).toList());
+        assertEquals(1, writer.getDuplicatesCount());
+        ArgumentCaptor<Collection<Integer>> retired = ArgumentCaptor.forClass(Collection.class);
+        verify(dao, times(2)).retirePages(retired.capture(), eq(2));
+        assertTrue(retired.getValue().contains(2));
+    }
+
+    @Test
+    void writeUntilTest_whenPreferredNearDuplicateComesLater_thenRetireThePageKeptBefore() throws Exception {
+        writer.setSkipNearDuplicates(true);
+        doAnswer(invocation -> {
+            Collection<Lemma> lemmas = invocation.getArgument(0);
+            lemmas.forEach(lemma -> lemma.setId(7));
+            return null;
+        }).when(dao).saveLemmas(anyCollection());
+        LinkHandleTaskResult copy = result("/changed", Map.of("леопард", 1f));
+        copy.setFingerprint(0x0123_4567_89ab_cdefL ^ 1L << 33);
+        LinkHandleTaskResult original = result("/a", Map.of("леопард", 1f));
+        original.setFingerprint(0x0123_4567_89ab_cdefL);
+        writer.getQueue().put(copy);
+        writer.getQueue().put(original);
+        writer.writeUntil(() -> true);
+
+        verify(dao).retirePagesByPaths(site.getId(), List.of("/changed"), 2);
+        assertEquals(1, writer.getDuplicatesCount());
+    }
+
+    @Test
+    void writeUntilTest_whenResumedCrawlReplacesPageWrittenBeforeCheckpoint_thenCountItsLemmasOnce() throws Exception {
+        Map<Integer, Page> pageTable = new HashMap<>();
+        List<IndexEntry> indexTable = new ArrayList<>();
+        Map<String, Integer> lemmaTable = new HashMap<>(Map.of("леопард", 7));
+        Page live = new Page("/changed", 200, "", site);
+        live.setId(2);
+        live.setGeneration(1);
+        pageTable.put(2, live);
+        indexTable.add(new IndexEntry(7, 2, 1f, null));
+        AtomicInteger nextPageId = new AtomicInteger(10);
+        doAnswer(invocation -> {
+            List<Page> pages = invocation.getArgument(0);
+            pages.forEach(page -> {
+                page.setId(nextPageId.getAndIncrement());
+                pageTable.put(page.getId(), page);
+            });
+            return null;
+        }).when(dao).savePages(anyList());
+        doAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            ids.forEach(id -> pageTable.get(id).setRetiredGeneration(invocation.getArgument(1)));
+            return null;
+        }).when(dao).retirePages(anyCollection(), eq(2));
+        doAnswer(invocation -> {
+            Collection<Lemma> lemmas = invocation.getArgument(0);
+            lemmas.forEach(lemma -> lemma.setId(lemmaTable.computeIfAbsent(lemma.getLemma(), l -> 8)));
+            return null;
+        }).when(dao).saveLemmas(anyCollection());
+        doAnswer(invocation -> indexTable.addAll(invocation.getArgument(0))).when(dao).saveIndexEntries(anyList());
+        Map<String, StoredPage> liveStoredPages = Map.of("/changed", new StoredPage(2, "/changed", 12, null, null, 0));
+        SiteIndexWriter interrupted = new SiteIndexWriter(site, 2, dao, liveStoredPages, frontier, metrics);
+        frontier.admit(site.getUrl() + "/changed", 1);
+        interrupted.saveCheckpoint();
+        interrupted.getQueue().put(result("/changed", Map.of("леопард", 1f)));
+        interrupted.writeUntil(() -> true);
+
+        ArgumentCaptor<CrawlCheckpoint> checkpoint = ArgumentCaptor.forClass(CrawlCheckpoint.class);
+        verify(dao).saveCheckpoint(checkpoint.capture());
+        Map<String, StoredPage> resumedStoredPages = pageTable.values().stream()
+                .filter(page -> page.getRetiredGeneration() == 0)
+                .collect(Collectors.toMap(Page::getPath, page -> new StoredPage(page.getId(), page.getPath(),
+                        page.getContentHash(), null, null, 0)));
+        SiteIndexWriter resumed = new SiteIndexWriter(site, 2, dao, resumedStoredPages, SiteFrontier.restore(
+                site.getUrl(), 10, 100, new SiteFrontier.Snapshot(checkpoint.getValue().getVisitedPaths(),
+                        checkpoint.getValue().getPendingUrls())), metrics);
+        resumed.restore(checkpoint.getValue());
+        resumed.getQueue().put(result("/changed", Map.of("леопард", 1f, "осетия", 1f)));
+        resumed.writeUntil(() -> true);
+        resumed.retireDisappearedPages();
+
+        Map<Integer, Integer> frequencies = new HashMap<>(Map.of(7, 1));
+        indexTable.forEach(entry -> {
+            Page page = pageTable.get(entry.pageId());
+            boolean added = page.getGeneration() == 2;
+            boolean retired = page.getRetiredGeneration() == 2;
+            if (added != retired) frequencies.merge(entry.lemmaId(), added ? 1 : -1, Integer::sum);
+        });
+        assertEquals(Map.of(7, 1, 8, 1), frequencies);
+    }
+
+    private LinkHandleTaskResult result(String path, Map<String, Float> lemmas) {
+        LinkHandleTaskResult result = new LinkHandleTaskResult(path, 200, 0, "<html></html>");
+        result.setTitle("Страница " + path);
+        result.setText("текст " + path);
+        result.setLemmasAndRanksMap(lemmas);
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.Test;
+import ru.vladimirsazonov.SiteSearchEngine.services.search.snippet.SnippetGenerator;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnippetGeneratorTest {
+    private final SnippetGenerator snippetGenerator = new SnippetGenerator(List.of(
+            Set.of("леопард", "леопарда", "леопарды"),
+            Set.of("осетия", "осетии")));
+
+    @Test
+    void generateTest_whenTextContainsWordForms_thenHighlightThemKeepingCase() {
+        assertEquals("Повторное появление <b>леопарда</b> в <b>Осетии</b> позволяет предположить",
+                snippetGenerator.generate("Повторное появление леопарда в Осетии позволяет предположить"));
+    }
+
+    @Test
+    void generateTest_whenLemmasAreFarApart_thenChooseWindowWithAllLemmas() {
+        String text = "Леопард живёт в горах. " + "Слово ".repeat(60)
+                + "Снова видели леопарда, на этот раз в Осетии, рядом с заповедником. " + "Конец ".repeat(60);
+        String snippet = snippetGenerator.generate(text);
+        assertTrue(snippet.startsWith("..."));
+        assertTrue(snippet.endsWith("..."));
+        assertTrue(snippet.contains("<b>леопарда</b>, на этот раз в <b>Осетии</b>"));
+        assertFalse(snippet.contains("<b>Леопард</b>"));
+    }
+
+    @Test
+    void generateTest_whenWordIsPartOfLongerWord_thenDoNotHighlight() {
+        assertEquals("Леопардовый окрас", snippetGenerator.generate("Леопардовый окрас"));
+    }
+}
@@ -10,6 +10,7 @@ import ru.vladimirsazonov.SiteSearchEngine.config.SitesList;
 import ru.vladimirsazonov.SiteSearchEngine.dto.StatisticsResponse;
 import ru.vladimirsazonov.SiteSearchEngine.model.Site;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.IndexingService;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.CrawlMetrics;
 import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.DAO;
 import ru.vladimirsazonov.SiteSearchEngine.services.statistics.StatisticsServiceImpl;
 
@@ -17,6 +18,7 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,6 +31,8 @@ class StatisticsServiceImplTest {
     private IndexingService indexingService;
     @Mock
     private SitesList sites;
+    @Mock
+    private CrawlMetrics crawlMetrics;
     @InjectMocks
     private StatisticsServiceImpl statisticsService;
     private List<Site> siteList;
@@ -45,14 +49,12 @@ class StatisticsServiceImplTest {
         searchEngineResponse = new StatisticsResponse(
                 new StatisticsResponse.Statistics(new StatisticsResponse.Total(2, 0, 0, false),
                         List.of(new StatisticsResponse.SiteStatistics("http://www.playback.ru", "Playback",
-                                null, Timestamp.valueOf(statusTime).getTime(), null, 0, 0))));
+                                null, Timestamp.valueOf(statusTime).getTime(), null, 0, 0, null))));
     }
 
     @Test
     void getStatisticsTest_ifSiteListIsNotEmpty_returnValidSearchEngineResponse() {
         doReturn(siteList).when(dao).findAllSites();
-        doReturn(0L).when(dao).getPagesTotalCount();
-        doReturn(0L).when(dao).getLemmasTotalCount();
         doReturn(false).when(indexingService).isIndexingRunning();
         verifyNoMoreInteractions(dao);
         assertEquals(searchEngineResponse, statisticsService.getStatistics());
@@ -63,9 +65,39 @@ class StatisticsServiceImplTest {
         doReturn(List.of()).when(dao).findAllSites();
         doReturn(siteList).when(sites).getSites();
         doReturn(siteList).when(dao).saveSites(siteList);
-        doReturn(0L).when(dao).getPagesTotalCount();
-        doReturn(0L).when(dao).getLemmasTotalCount();
         doReturn(false).when(indexingService).isIndexingRunning();
         assertEquals(searchEngineResponse, statisticsService.getStatistics());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getStatisticsTest_whenPolledRepeatedly_thenServeSiteCountersFromSnapshot() {
+        siteList.get(0).setPageCount(120);
+        siteList.get(0).setLemmaCount(3000);
+        siteList.get(1).setPageCount(30);
+        siteList.get(1).setLemmaCount(900);
+        doReturn(siteList).when(dao).findAllSites();
+        doReturn(false, true).when(indexingService).isIndexingRunning();
+        StatisticsResponse.Statistics first = ((StatisticsResponse) statisticsService.getStatistics()).getStatistics();
+        StatisticsResponse.Statistics second = ((StatisticsResponse) statisticsService.getStatistics()).getStatistics();
+
+        assertEquals(new StatisticsResponse.Total(2, 150, 3900, false), first.total());
+        assertEquals(List.of(120, 30), first.detailed().stream().map(StatisticsResponse.SiteStatistics::pages).toList());
+        assertTrue(second.total().isIndexing());
+        verify(dao, times(1)).findAllSites();
+    }
+
+    @Test
+    void getStatisticsTest_whenSiteIsBeingCrawled_thenAddLiveProgressToSnapshot() {
+        StatisticsResponse.CrawlProgress progress = new StatisticsResponse.CrawlProgress(40, 8, 12, 3, 204800,
+                120, 4, 5000, 1000, Map.of("SocketTimeoutException", 2L), 60);
+        doReturn(siteList).when(dao).findAllSites();
+        doReturn(true).when(indexingService).isIndexingRunning();
+        doReturn(null, progress).when(crawlMetrics).getProgress("http://www.playback.ru");
+        statisticsService.getStatistics();
+        StatisticsResponse.Statistics second = ((StatisticsResponse) statisticsService.getStatistics()).getStatistics();
+
+        assertEquals(progress, second.detailed().get(0).progress());
+        assertNull(second.detailed().get(1).progress());
+        verify(dao, times(1)).findAllSites();
+    }
+}
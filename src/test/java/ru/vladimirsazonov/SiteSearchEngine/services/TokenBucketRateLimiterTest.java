@@ -0,0 +1,37 @@
+package ru.vladimirsazonov.SiteSearchEngine.services;
+
+import org.junit.jupiter.api.Test;
+import ru.vladimirsazonov.SiteSearchEngine.services.indexing.impl.TokenBucketRateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketRateLimiterTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void reserveTest_whenBurstIsSpent_thenSpaceRequestsByInterval() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 3, clock::get);
+        assertEquals(0, rateLimiter.reserve());
+        assertEquals(0, rateLimiter.reserve());
+        assertEquals(0, rateLimiter.reserve());
+        assertEquals(INTERVAL, rateLimiter.reserve());
+        assertEquals(2 * INTERVAL, rateLimiter.reserve());
+    }
+
+    @Test
+    void reserveTest_whenHostWasIdle_thenBurstIsRestored() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10, 2, clock::get);
+        rateLimiter.reserve();
+        rateLimiter.reserve();
+        assertEquals(INTERVAL, rateLimiter.reserve());
+        clock.addAndGet(10 * INTERVAL);
+        assertEquals(0, rateLimiter.reserve());
+        assertEquals(0, rateLimiter.reserve());
+        assertEquals(INTERVAL, rateLimiter.reserve());
+    }
+}